@@ -0,0 +1,379 @@
+package cz.net21.ttulka.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asynchronous boundary writer.
+ * <p>
+ * Producers hand sub-streams over to a background writer thread through a bounded queue and return immediately; a producer blocks only when the queue is
+ * full (backpressure). The writer thread writes the sub-streams with their boundaries in the order of appending, coalesced into large writes. The base
+ * stream is flushed when the pending data reaches the flush size or when the oldest pending sub-stream waited for the max latency.
+ * <p>
+ * Completion of each sub-stream is signalled by the returned future or by a callback.
+ * <p>
+ * When writing into the base stream fails, the writer is broken: the pending and all the later sub-streams fail with the error and no more data is written,
+ * so the output is never misframed.
+ *
+ * @author ttulka
+ */
+public class AsyncBoundaryWriter implements Closeable {
+
+    /**
+     * Default capacity of the queue.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Default size of pending data in bytes to flush at.
+     */
+    public static final int DEFAULT_FLUSH_SIZE = 64 * 1024;
+
+    /**
+     * Default max latency of a sub-stream in milliseconds.
+     */
+    public static final long DEFAULT_MAX_LATENCY = 10;
+
+    /**
+     * Callback notified when a sub-stream has been written.
+     */
+    public interface Callback {
+
+        /**
+         * The sub-stream has been written and flushed into the base stream.
+         */
+        void completed();
+
+        /**
+         * The sub-stream could not be written.
+         *
+         * @param error the error
+         */
+        void failed(IOException error);
+    }
+
+    private static final Entry CLOSE = new Entry(new byte[0], 0, 0, null);
+
+    protected final OutputStream outputStream;
+    protected final byte[] boundary;
+
+    private final int flushSize;
+    private final long maxLatency;
+
+    private final BlockingQueue<Entry> queue;
+    private final Thread writerThread;
+
+    private byte[] batch;
+    private volatile boolean closed = false;
+    private volatile IOException failure;
+
+    /**
+     * Creates the asynchronous boundary writer based on a base output stream.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code> and the default settings.
+     *
+     * @param outputStream the base output stream
+     */
+    public AsyncBoundaryWriter(OutputStream outputStream) {
+        this(outputStream, BoundaryStreamConsts.BOUNDARY);
+    }
+
+    /**
+     * Creates the asynchronous boundary writer based on a base output stream with an explicit boundary.
+     * <p>
+     * Uses the default settings.
+     *
+     * @param outputStream the base output stream
+     * @param boundary     the boundary
+     */
+    public AsyncBoundaryWriter(OutputStream outputStream, byte[] boundary) {
+        this(outputStream, boundary, DEFAULT_QUEUE_CAPACITY, DEFAULT_FLUSH_SIZE, DEFAULT_MAX_LATENCY);
+    }
+
+    /**
+     * Creates the asynchronous boundary writer based on a base output stream with an explicit boundary.
+     *
+     * @param outputStream  the base output stream
+     * @param boundary      the boundary
+     * @param queueCapacity the max count of sub-streams waiting in the queue
+     * @param flushSize     the size of pending data in bytes to flush at
+     * @param maxLatency    the max time in milliseconds a sub-stream waits for flushing, zero to flush without waiting
+     * @throws IllegalArgumentException when the queue capacity or the flush size is not positive or the max latency is negative
+     */
+    public AsyncBoundaryWriter(OutputStream outputStream, byte[] boundary, int queueCapacity, int flushSize, long maxLatency) {
+        super();
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+        if (flushSize <= 0) {
+            throw new IllegalArgumentException("Flush size must be positive.");
+        }
+        if (maxLatency < 0) {
+            throw new IllegalArgumentException("Max latency cannot be negative.");
+        }
+        this.outputStream = outputStream;
+        this.boundary = boundary.clone();
+        this.flushSize = flushSize;
+        this.maxLatency = maxLatency;
+        this.queue = new ArrayBlockingQueue<Entry>(queueCapacity);
+        this.batch = new byte[Math.min(flushSize, BoundaryBufferPool.DEFAULT_BUFFER_SIZE)];
+
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBehind();
+            }
+        }, "boundary-write-behind");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Appends the sub-stream followed by the boundary. This method blocks only when the queue is full.
+     * <p>
+     * The array must not be modified until the sub-stream is written.
+     *
+     * @param subStream the sub-stream
+     * @return the future completed when the sub-stream is written
+     * @throws IOException if the writer is closed or interrupted while waiting
+     */
+    public Future<Void> append(byte[] subStream) throws IOException {
+        return append(subStream, 0, subStream.length, null);
+    }
+
+    /**
+     * Appends the part of the array as a sub-stream followed by the boundary. This method blocks only when the queue is full.
+     * <p>
+     * The array must not be modified until the sub-stream is written.
+     *
+     * @param b        the data
+     * @param off      the start offset in the data
+     * @param len      the number of bytes to write
+     * @param callback the callback to notify from the writer thread, or <code>null</code>
+     * @return the future completed when the sub-stream is written
+     * @throws IOException if the writer is closed or interrupted while waiting
+     */
+    public Future<Void> append(byte[] b, int off, int len, Callback callback) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (closed) {
+            throw new IOException("Writer closed.");
+        }
+        if (failure != null) {
+            throw new IOException("Writing failed.", failure);
+        }
+        Entry entry = new Entry(b, off, len, callback);
+        try {
+            queue.put(entry);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the queue.");
+        }
+        // closed meanwhile and not taken by the writer thread
+        if (closed && !writerThread.isAlive() && queue.remove(entry)) {
+            throw new IOException("Writer closed.");
+        }
+        return entry;
+    }
+
+    /**
+     * Coalesces queued sub-streams into batches until closed.
+     */
+    private void writeBehind() {
+        List<Entry> pending = new ArrayList<Entry>();
+        int length = 0;
+        long deadline = 0;
+        try {
+            while (true) {
+                Entry entry;
+                if (pending.isEmpty()) {
+                    entry = queue.take();
+                } else {
+                    entry = queue.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+
+                if (entry != null && entry != CLOSE) {
+                    if (pending.isEmpty()) {
+                        deadline = System.currentTimeMillis() + maxLatency;
+                    }
+                    length = add(entry, length);
+                    pending.add(entry);
+                }
+
+                // the max latency elapsed, the batch is full or closing
+                if (entry == null || entry == CLOSE || length >= flushSize || System.currentTimeMillis() >= deadline) {
+                    if (!pending.isEmpty()) {
+                        write(pending, length);
+                        pending.clear();
+                        length = 0;
+                    }
+                    if (entry == CLOSE) {
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            fail(pending, new InterruptedIOException("Writer interrupted."));
+        }
+    }
+
+    private int add(Entry entry, int length) {
+        int needed = length + entry.len + boundary.length;
+        if (needed > batch.length) {
+            byte[] bigger = new byte[Math.max(needed, batch.length * 2)];
+            System.arraycopy(batch, 0, bigger, 0, length);
+            batch = bigger;
+        }
+        System.arraycopy(entry.b, entry.off, batch, length, entry.len);
+        System.arraycopy(boundary, 0, batch, length + entry.len, boundary.length);
+        return needed;
+    }
+
+    private void write(List<Entry> pending, int length) {
+        if (failure != null) {
+            fail(pending, failure);
+            return;
+        }
+        try {
+            outputStream.write(batch, 0, length);
+            outputStream.flush();
+
+        } catch (IOException e) {
+            // a partially written batch would misframe all the following data
+            failure = e;
+            fail(pending, e);
+            return;
+
+        } finally {
+            if (batch.length > flushSize * 2) {
+                batch = new byte[Math.min(flushSize, BoundaryBufferPool.DEFAULT_BUFFER_SIZE)];
+            }
+        }
+        for (Entry entry : pending) {
+            entry.complete(null);
+        }
+    }
+
+    private void fail(List<Entry> pending, IOException error) {
+        for (Entry entry : pending) {
+            entry.complete(error);
+        }
+    }
+
+    /**
+     * Writes all the appended sub-streams and closes the writer and the base stream.
+     *
+     * @throws IOException if an I/O error occurs or writing has failed before
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(CLOSE);
+            writerThread.join();
+
+            // appended concurrently with closing
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                entry.complete(new IOException("Writer closed."));
+            }
+        } catch (InterruptedException e) {
+            writerThread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing.");
+
+        } finally {
+            outputStream.close();
+        }
+        if (failure != null) {
+            throw new IOException("Writing failed.", failure);
+        }
+    }
+
+    private static class Entry implements Future<Void> {
+
+        final byte[] b;
+        final int off;
+        final int len;
+        final Callback callback;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile IOException error;
+
+        Entry(byte[] b, int off, int len, Callback callback) {
+            this.b = b;
+            this.off = off;
+            this.len = len;
+            this.callback = callback;
+        }
+
+        void complete(IOException error) {
+            this.error = error;
+            done.countDown();
+
+            if (callback != null) {
+                try {
+                    if (error == null) {
+                        callback.completed();
+                    } else {
+                        callback.failed(error);
+                    }
+                } catch (RuntimeException e) {
+                    // a failing callback must not stop the writer thread
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            done.await();
+            return result();
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private Void result() throws ExecutionException {
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package cz.net21.ttulka.io;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread-safe pool of block buffers for boundary input streams.
+ * <p>
+ * A pool can be shared by many boundary input streams to avoid allocating a new buffer for each stream. Acquiring and releasing a buffer doesn't
+ * allocate any memory once the pool is warmed up.
+ *
+ * @author ttulka
+ */
+public class BoundaryBufferPool {
+
+    /**
+     * Default size of a block buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final int bufferSize;
+    private final AtomicReferenceArray<byte[]> buffers;
+
+    /**
+     * Creates the buffer pool with the default buffer size.
+     *
+     * @param capacity the maximal count of buffers held by the pool
+     */
+    public BoundaryBufferPool(int capacity) {
+        this(DEFAULT_BUFFER_SIZE, capacity);
+    }
+
+    /**
+     * Creates the buffer pool.
+     *
+     * @param bufferSize the size of a buffer
+     * @param capacity   the maximal count of buffers held by the pool
+     * @throws IllegalArgumentException when the buffer size or the capacity is not positive
+     */
+    public BoundaryBufferPool(int bufferSize, int capacity) {
+        super();
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive.");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.bufferSize = bufferSize;
+        this.buffers = new AtomicReferenceArray<byte[]>(capacity);
+    }
+
+    /**
+     * Returns the size of buffers provided by this pool.
+     *
+     * @return the buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Acquires a buffer from the pool. A new buffer is created when the pool is empty.
+     *
+     * @return the buffer
+     */
+    public byte[] acquire() {
+        for (int i = 0; i < buffers.length(); i++) {
+            byte[] buffer = buffers.getAndSet(i, null);
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Releases the buffer back to the pool. The buffer is thrown away when the pool is full.
+     *
+     * @param buffer the buffer
+     * @throws IllegalArgumentException when the buffer has a wrong size
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length != bufferSize) {
+            throw new IllegalArgumentException("Buffer doesn't belong to this pool.");
+        }
+        for (int i = 0; i < buffers.length(); i++) {
+            if (buffers.compareAndSet(i, null, buffer)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package cz.net21.ttulka.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * Boundary reader for byte channels.
+ * <p>
+ * The base channel is read into a direct block buffer, which is scanned for boundaries off-heap. Sub-streams are returned as read-only slices of the block
+ * buffer or transferred into another channel without copying the data into heap arrays.
+ * <p>
+ * The base channel is expected to be blocking.
+ *
+ * @author ttulka
+ */
+public class BoundaryChannelReader implements Closeable {
+
+    protected final ReadableByteChannel channel;
+    protected final byte[] boundary;
+
+    private final ByteBuffer buffer;
+    private boolean endOfBaseStream = false;
+
+    private boolean finished = false;
+    private boolean started = false;
+    private boolean endOfCurrentStream = false;
+    private boolean finishedCheckPending = false;
+
+    /**
+     * Creates the boundary channel reader based on a base channel.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code>.
+     *
+     * @param channel the base channel
+     */
+    public BoundaryChannelReader(ReadableByteChannel channel) {
+        this(channel, BoundaryStreamConsts.BOUNDARY);
+    }
+
+    /**
+     * Creates the boundary channel reader based on a base channel with an explicit boundary.
+     *
+     * @param channel  the base channel
+     * @param boundary the boundary
+     */
+    public BoundaryChannelReader(ReadableByteChannel channel, byte[] boundary) {
+        this(channel, boundary, BoundaryBufferPool.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates the boundary channel reader based on a base channel with an explicit boundary.
+     *
+     * @param channel    the base channel
+     * @param boundary   the boundary
+     * @param bufferSize the size of the direct block buffer
+     * @throws IllegalArgumentException when the buffer is not longer than the boundary
+     */
+    public BoundaryChannelReader(ReadableByteChannel channel, byte[] boundary, int bufferSize) {
+        super();
+        if (bufferSize <= boundary.length) {
+            throw new IllegalArgumentException("Buffer must be longer than the boundary.");
+        }
+        this.channel = channel;
+        this.boundary = boundary.clone();
+
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.buffer.flip();
+    }
+
+    /**
+     * Returns true if the channel has already reached EOF.
+     * <p>
+     * When a boundary has been reached, this method blocks until the next data or EOF of the base channel is available.
+     *
+     * @return true if the reader finished, otherwise false
+     */
+    public boolean hasFinished() {
+        checkFinishedIfPending();
+        return finished;
+    }
+
+    /**
+     * Moves to the next sub-stream. The rest of the current sub-stream is skipped.
+     *
+     * @throws NoSuchElementException when no more sub-streams
+     */
+    public void next() {
+        checkFinishedIfPending();
+        if (finished) {
+            throw new NoSuchElementException("Stream already finished.");
+        }
+        if (started && !endOfCurrentStream) {
+            try {
+                while (readChunk() != null) {
+                    // skip
+                }
+            } catch (IOException e) {
+                endOfCurrentStream = true;
+                finished = true;
+            }
+        }
+        started = true;
+        endOfCurrentStream = false;
+    }
+
+    /**
+     * Returns the next chunk of the current sub-stream as a read-only slice of the block buffer.
+     * <p>
+     * The chunk is valid only until the next call of any method of the reader.
+     *
+     * @return the chunk, or null if the current sub-stream has ended
+     * @throws IOException if an I/O error occurs
+     */
+    public ByteBuffer readChunk() throws IOException {
+        if (!started || endOfCurrentStream || finished) {
+            return null;
+        }
+        while (buffer.remaining() < boundary.length && !endOfBaseStream) {
+            fillBuffer();
+        }
+        int position = buffer.position();
+        int limit = buffer.limit();
+
+        if (position == limit) {
+            endOfCurrentStream = true;
+            finished = true;
+            return null;
+        }
+
+        int end = endOfBaseStream ? limit : limit - boundary.length + 1;
+        for (int i = position; i <= limit - boundary.length; i++) {
+            if (isBoundaryAt(i)) {
+                if (i == position) {
+                    buffer.position(position + boundary.length);
+                    endOfCurrentStream = true;
+                    finishedCheckPending = true;
+                    return null;
+                }
+                end = i;
+                break;
+            }
+        }
+
+        ByteBuffer chunk = buffer.duplicate();
+        chunk.limit(end);
+        buffer.position(end);
+        return chunk.slice().asReadOnlyBuffer();
+    }
+
+    private boolean isBoundaryAt(int index) {
+        for (int i = 0; i < boundary.length; i++) {
+            if (buffer.get(index + i) != boundary[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the rest of the current sub-stream into the byte buffer. The reading stops when the byte buffer is full, the rest of the sub-stream can be read
+     * by next calls.
+     *
+     * @param dst the byte buffer
+     * @return the count of bytes read, or <code>-1</code> if the current sub-stream has ended
+     * @throws IOException if an I/O error occurs
+     */
+    public int readSubStreamInto(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        int total = 0;
+        while (dst.hasRemaining()) {
+            ByteBuffer chunk = readChunk();
+            if (chunk == null) {
+                break;
+            }
+            if (chunk.remaining() > dst.remaining()) {
+                // unread bytes stay in the block buffer
+                buffer.position(buffer.position() - chunk.remaining() + dst.remaining());
+                chunk.limit(dst.remaining());
+            }
+            total += chunk.remaining();
+            dst.put(chunk);
+        }
+        return total == 0 && endOfCurrentStream ? -1 : total;
+    }
+
+    /**
+     * Transfers the rest of the current sub-stream into the channel. The data is written directly from the block buffer.
+     *
+     * @param out the channel
+     * @return the count of bytes transferred
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferSubStreamTo(WritableByteChannel out) throws IOException {
+        long total = 0;
+        ByteBuffer chunk;
+        while ((chunk = readChunk()) != null) {
+            total += chunk.remaining();
+            while (chunk.hasRemaining()) {
+                out.write(chunk);
+            }
+        }
+        return total;
+    }
+
+    private void fillBuffer() throws IOException {
+        buffer.compact();
+        try {
+            if (channel.read(buffer) == -1) {
+                endOfBaseStream = true;
+            }
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private void checkFinishedIfPending() {
+        if (finishedCheckPending) {
+            finishedCheckPending = false;
+            try {
+                while (!buffer.hasRemaining() && !endOfBaseStream) {
+                    fillBuffer();
+                }
+                if (!buffer.hasRemaining()) {
+                    finished = true;
+                }
+            } catch (IOException e) {
+                finished = true;
+            }
+        }
+    }
+
+    /**
+     * Closes the base channel.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
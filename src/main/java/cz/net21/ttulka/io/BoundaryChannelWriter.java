@@ -0,0 +1,140 @@
+package cz.net21.ttulka.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Boundary writer for gathering byte channels.
+ * <p>
+ * A sub-stream and its boundary are written by a single gathering write without copying the sub-stream into a staging buffer.
+ *
+ * @author ttulka
+ */
+public class BoundaryChannelWriter implements Closeable {
+
+    protected final GatheringByteChannel channel;
+    protected final byte[] boundary;
+
+    private ByteBuffer[] boundaryBuffers = new ByteBuffer[0];
+    private ByteBuffer[] gather = new ByteBuffer[0];
+
+    /**
+     * Creates the boundary channel writer based on a base channel.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code>.
+     *
+     * @param channel the base channel
+     */
+    public BoundaryChannelWriter(GatheringByteChannel channel) {
+        this(channel, BoundaryStreamConsts.BOUNDARY);
+    }
+
+    /**
+     * Creates the boundary channel writer based on a base channel with an explicit boundary.
+     *
+     * @param channel  the base channel
+     * @param boundary the boundary
+     */
+    public BoundaryChannelWriter(GatheringByteChannel channel, byte[] boundary) {
+        super();
+        this.channel = channel;
+        this.boundary = boundary.clone();
+    }
+
+    /**
+     * Writes the data into the base channel.
+     *
+     * @param src the data
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(ByteBuffer src) throws IOException {
+        writeFully(src);
+    }
+
+    /**
+     * Writes the boundary into the base channel.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void boundary() throws IOException {
+        writeFully(ByteBuffer.wrap(boundary));
+    }
+
+    /**
+     * Writes the sub-stream followed by the boundary into the base channel by a single gathering write.
+     *
+     * @param subStream the sub-stream
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeSubStream(ByteBuffer subStream) throws IOException {
+        writeSubStreams(subStream);
+    }
+
+    /**
+     * Writes the sub-streams, each followed by the boundary, into the base channel by a single gathering write.
+     *
+     * @param subStreams the sub-streams
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeSubStreams(ByteBuffer... subStreams) throws IOException {
+        int length = subStreams.length * 2;
+        if (gather.length < length) {
+            gather = new ByteBuffer[length];
+        }
+        ensureBoundaryBuffers(subStreams.length);
+
+        long remaining = 0;
+        for (int i = 0; i < subStreams.length; i++) {
+            gather[i * 2] = subStreams[i];
+            gather[i * 2 + 1] = boundaryBuffers[i];
+            boundaryBuffers[i].clear();
+
+            remaining += subStreams[i].remaining() + boundary.length;
+        }
+
+        try {
+            int offset = 0;
+            while (remaining > 0) {
+                remaining -= channel.write(gather, offset, length - offset);
+
+                while (offset < length && !gather[offset].hasRemaining()) {
+                    offset++;
+                }
+            }
+        } finally {
+            // don't hold the sub-streams
+            for (int i = 0; i < length; i++) {
+                gather[i] = null;
+            }
+        }
+    }
+
+    private void ensureBoundaryBuffers(int count) {
+        if (boundaryBuffers.length < count) {
+            ByteBuffer[] buffers = new ByteBuffer[Math.max(count, boundaryBuffers.length * 2)];
+            System.arraycopy(boundaryBuffers, 0, buffers, 0, boundaryBuffers.length);
+            for (int i = boundaryBuffers.length; i < buffers.length; i++) {
+                buffers[i] = ByteBuffer.wrap(boundary).asReadOnlyBuffer();
+            }
+            boundaryBuffers = buffers;
+        }
+    }
+
+    void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+    /**
+     * Closes the base channel.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
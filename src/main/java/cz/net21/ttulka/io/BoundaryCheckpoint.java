@@ -0,0 +1,126 @@
+package cz.net21.ttulka.io;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Position of a boundary input stream in its base stream.
+ * <p>
+ * A checkpoint can be persisted and later used for reopening a seekable source at the same position without reading it from the beginning.
+ *
+ * @author ttulka
+ */
+public final class BoundaryCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long subStreamIndex;
+    private final long offset;
+    private final boolean endOfSubStream;
+    private final boolean finished;
+    private final byte[] levels;
+
+    /**
+     * Creates the checkpoint.
+     *
+     * @param subStreamIndex the index of the current sub-stream, <code>-1</code> if no sub-stream has been started yet
+     * @param offset         the absolute offset in the base stream
+     * @param endOfSubStream whether the current sub-stream has reached its end
+     * @param finished       whether the stream has finished
+     */
+    public BoundaryCheckpoint(long subStreamIndex, long offset, boolean endOfSubStream, boolean finished) {
+        this(subStreamIndex, offset, endOfSubStream, finished, null);
+    }
+
+    /**
+     * Creates the checkpoint of a nested stream.
+     *
+     * @param subStreamIndex the index of the current sub-stream, <code>-1</code> if no sub-stream has been started yet
+     * @param offset         the absolute offset in the base stream
+     * @param endOfSubStream whether the current sub-stream has reached its end
+     * @param finished       whether the stream has finished
+     * @param levels         the state of each level of the nested stream, or <code>null</code>
+     */
+    BoundaryCheckpoint(long subStreamIndex, long offset, boolean endOfSubStream, boolean finished, byte[] levels) {
+        super();
+        this.subStreamIndex = subStreamIndex;
+        this.offset = offset;
+        this.endOfSubStream = endOfSubStream;
+        this.finished = finished;
+        this.levels = levels != null ? levels.clone() : null;
+    }
+
+    /**
+     * Returns the index of the current sub-stream, starting with zero.
+     *
+     * @return the index of the current sub-stream, <code>-1</code> if no sub-stream has been started yet
+     */
+    public long getSubStreamIndex() {
+        return subStreamIndex;
+    }
+
+    /**
+     * Returns the absolute offset in the base stream of the next byte to be read.
+     *
+     * @return the offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns true if the current sub-stream has reached its end.
+     *
+     * @return true if the current sub-stream ended, otherwise false
+     */
+    public boolean isEndOfSubStream() {
+        return endOfSubStream;
+    }
+
+    /**
+     * Returns true if the stream has finished.
+     *
+     * @return true if the stream finished, otherwise false
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns the state of each level of the nested stream.
+     *
+     * @return the states of the levels, or <code>null</code> if the checkpoint does not belong to a nested stream
+     */
+    byte[] getLevels() {
+        return levels != null ? levels.clone() : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BoundaryCheckpoint that = (BoundaryCheckpoint) o;
+        return subStreamIndex == that.subStreamIndex && offset == that.offset && endOfSubStream == that.endOfSubStream && finished == that.finished
+               && Arrays.equals(levels, that.levels);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (subStreamIndex ^ (subStreamIndex >>> 32));
+        result = 31 * result + (int) (offset ^ (offset >>> 32));
+        result = 31 * result + (endOfSubStream ? 1 : 0);
+        result = 31 * result + (finished ? 1 : 0);
+        result = 31 * result + Arrays.hashCode(levels);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundaryCheckpoint{subStreamIndex=" + subStreamIndex + ", offset=" + offset + ", endOfSubStream=" + endOfSubStream + ", finished=" + finished
+               + (levels != null ? ", levels=" + Arrays.toString(levels) : "") + "}";
+    }
+}
@@ -0,0 +1,107 @@
+package cz.net21.ttulka.io;
+
+/**
+ * Escaping of binary data not to contain the first byte of the boundary, so it can never collide with the boundary.
+ * <p>
+ * The first byte of the boundary and the escape byte are replaced by the escape byte followed by a code. The escaped data is at most twice as long.
+ *
+ * @author ttulka
+ */
+final class BoundaryEscaper {
+
+    private final byte first;
+    private final byte escape;
+    private final byte firstCode;
+    private final byte escapeCode;
+
+    private boolean escapePending = false;
+
+    /**
+     * Creates the escaper for the boundary.
+     *
+     * @param boundary the boundary
+     */
+    BoundaryEscaper(byte[] boundary) {
+        super();
+        this.first = boundary[0];
+        this.escape = first == 0x1B ? (byte) 0x1C : (byte) 0x1B;
+
+        // codes must differ from the first byte of the boundary
+        this.firstCode = first == 0x01 ? (byte) 0x03 : (byte) 0x01;
+        this.escapeCode = first == 0x02 ? (byte) 0x03 : (byte) 0x02;
+    }
+
+    /**
+     * Escapes the data.
+     *
+     * @param src the data
+     * @param off the start offset in the data
+     * @param len the count of bytes to escape
+     * @param dst the array for the escaped data, at least twice as long as the data
+     * @return the length of the escaped data
+     */
+    int encode(byte[] src, int off, int len, byte[] dst) {
+        int length = 0;
+        for (int i = off; i < off + len; i++) {
+            byte b = src[i];
+            if (b == first) {
+                dst[length++] = escape;
+                dst[length++] = firstCode;
+            } else if (b == escape) {
+                dst[length++] = escape;
+                dst[length++] = escapeCode;
+            } else {
+                dst[length++] = b;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Unescapes the data. An escape byte at the end of the data is resolved with the next call.
+     *
+     * @param src the escaped data
+     * @param off the start offset in the escaped data
+     * @param len the count of bytes to unescape
+     * @param dst the array for the data, at least as long as the escaped data
+     * @return the length of the data
+     * @throws IllegalArgumentException when an unknown code follows the escape byte
+     */
+    int decode(byte[] src, int off, int len, byte[] dst) {
+        int length = 0;
+        for (int i = off; i < off + len; i++) {
+            byte b = src[i];
+            if (escapePending) {
+                escapePending = false;
+                if (b == firstCode) {
+                    dst[length++] = first;
+                } else if (b == escapeCode) {
+                    dst[length++] = escape;
+                } else {
+                    throw new IllegalArgumentException("Invalid escape code: " + b);
+                }
+            } else if (b == escape) {
+                escapePending = true;
+            } else {
+                dst[length++] = b;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns true if the last decoded byte was an unresolved escape byte.
+     *
+     * @return true if an escape is pending
+     */
+    boolean isEscapePending() {
+        return escapePending;
+    }
+
+    /**
+     * Resets the decoding state.
+     */
+    void reset() {
+        escapePending = false;
+    }
+}
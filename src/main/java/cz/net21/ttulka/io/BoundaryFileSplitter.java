@@ -0,0 +1,212 @@
+package cz.net21.ttulka.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a boundary file into a file per sub-stream.
+ * <p>
+ * The boundaries are located by a block scan of the file, the sub-stream data is then copied by {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)} without passing through the heap.
+ *
+ * @author ttulka
+ */
+public class BoundaryFileSplitter {
+
+    private static final int SCAN_BLOCK_SIZE = 64 * 1024;
+
+    protected final byte[] boundary;
+
+    /**
+     * Creates the splitter.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code>.
+     */
+    public BoundaryFileSplitter() {
+        this(BoundaryStreamConsts.BOUNDARY);
+    }
+
+    /**
+     * Creates the splitter with an explicit boundary.
+     *
+     * @param boundary the boundary
+     */
+    public BoundaryFileSplitter(byte[] boundary) {
+        super();
+        this.boundary = boundary.clone();
+    }
+
+    /**
+     * Scans the channel for the boundaries. The position of the channel is not changed.
+     * <p>
+     * The ranges correspond to sub-streams read by a <code>{@link BoundaryInputStream}</code>.
+     *
+     * @param channel the file channel
+     * @return the ranges of sub-streams
+     * @throws IOException if an I/O error occurs
+     */
+    public List<SubStreamRange> scan(FileChannel channel) throws IOException {
+        List<SubStreamRange> ranges = new ArrayList<SubStreamRange>();
+
+        byte[] buffer = new byte[Math.max(SCAN_BLOCK_SIZE, boundary.length * 2)];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+
+        long base = 0;  // file offset of the buffer start
+        long start = 0; // file offset of the current sub-stream
+        int index = 0;
+        int limit = 0;
+
+        while (true) {
+            while (limit - index >= boundary.length) {
+                if (BoundaryStreamUtils.startsWith(buffer, limit, index, boundary)) {
+                    ranges.add(new SubStreamRange(ranges.size(), start, base + index - start));
+                    index += boundary.length;
+                    start = base + index;
+                } else {
+                    index++;
+                }
+            }
+            // keep the unscanned rest
+            System.arraycopy(buffer, index, buffer, 0, limit - index);
+            base += index;
+            limit -= index;
+            index = 0;
+
+            byteBuffer.limit(buffer.length).position(limit);
+            int read = channel.read(byteBuffer, base + limit);
+            if (read == -1) {
+                break;
+            }
+            limit += read;
+        }
+
+        // the last sub-stream without a boundary at the end
+        long end = base + limit;
+        if (end > start || ranges.isEmpty()) {
+            ranges.add(new SubStreamRange(ranges.size(), start, end - start));
+        }
+        return ranges;
+    }
+
+    /**
+     * Splits the source file into a file per sub-stream.
+     *
+     * @param source      the boundary file
+     * @param targetDir   the directory for the sub-stream files
+     * @param namePattern the pattern of the sub-stream file names, formatted with the index of the sub-stream, e.g. <code>"part-%05d.dat"</code>
+     * @return the sub-stream files
+     * @throws IOException if an I/O error occurs
+     */
+    public List<File> split(File source, File targetDir, String namePattern) throws IOException {
+        return split(source, targetDir, namePattern, 1);
+    }
+
+    /**
+     * Splits the source file into a file per sub-stream. The sub-streams are copied in parallel.
+     *
+     * @param source      the boundary file
+     * @param targetDir   the directory for the sub-stream files
+     * @param namePattern the pattern of the sub-stream file names, formatted with the index of the sub-stream, e.g. <code>"part-%05d.dat"</code>
+     * @param threads     the count of threads copying the sub-streams
+     * @return the sub-stream files
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException when the count of threads is not positive
+     */
+    public List<File> split(File source, File targetDir, String namePattern, int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Count of threads must be positive.");
+        }
+        FileInputStream fis = new FileInputStream(source);
+        try {
+            final FileChannel channel = fis.getChannel();
+
+            List<SubStreamRange> ranges = scan(channel);
+            List<File> files = new ArrayList<File>(ranges.size());
+            for (SubStreamRange range : ranges) {
+                files.add(new File(targetDir, String.format(namePattern, range.getIndex())));
+            }
+
+            if (threads == 1) {
+                for (int i = 0; i < ranges.size(); i++) {
+                    transfer(channel, ranges.get(i), files.get(i));
+                }
+                return files;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> futures = new ArrayList<Future<Void>>(ranges.size());
+                for (int i = 0; i < ranges.size(); i++) {
+                    final SubStreamRange range = ranges.get(i);
+                    final File file = files.get(i);
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            transfer(channel, range, file);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while splitting.");
+
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Splitting failed: " + e.getCause());
+
+            } finally {
+                executor.shutdownNow();
+            }
+            return files;
+
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Copies the range of the channel into the file.
+     *
+     * @param channel the source channel
+     * @param range   the range
+     * @param file    the target file
+     * @throws EOFException if the range exceeds the file
+     * @throws IOException  if an I/O error occurs
+     */
+    static void transfer(FileChannel channel, SubStreamRange range, File file) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            FileChannel target = fos.getChannel();
+
+            long transferred = 0;
+            while (transferred < range.getLength()) {
+                long count = channel.transferTo(range.getOffset() + transferred, range.getLength() - transferred, target);
+                if (count <= 0) {
+                    // the file is shorter than the range
+                    throw new EOFException("Sub-stream range exceeds the file.");
+                }
+                transferred += count;
+            }
+        } finally {
+            fos.close();
+        }
+    }
+}
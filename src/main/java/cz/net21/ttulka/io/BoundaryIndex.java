@@ -0,0 +1,282 @@
+package cz.net21.ttulka.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keyed index of sub-streams in a boundary file.
+ * <p>
+ * The index maps a key of a sub-stream to its offset in the boundary file. It is an open-addressing hash table of primitive longs preceded by a bloom
+ * filter for fast negative lookups. The index file is memory-mapped on open, so a lookup touches only one or two pages. A large index file is mapped in
+ * chunks.
+ * <p>
+ * Index files are written by <code>{@link IndexedBoundaryOutputStream}</code>. A sub-stream is read by opening the boundary file at the checkpoint of the
+ * key:
+ * <pre>
+ * BoundaryInputStream bis = BoundaryInputStream.open(channel, boundary, index.checkpoint(key));
+ * bis.next();  // the sub-stream of the key
+ * </pre>
+ *
+ * @author ttulka
+ */
+public class BoundaryIndex implements Closeable {
+
+    private static final int MAGIC = 0x42494458; // "BIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5 * 4;
+    private static final int SLOT_SIZE = 3 * 8;
+
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private static final long EMPTY = -1;
+
+    /**
+     * Max count of keys, the capacity of the table must fit into an int.
+     */
+    private static final int MAX_KEYS = 1 << 29;
+
+    /**
+     * Size of a mapped chunk, a single mapping is limited to 2 GB.
+     */
+    private static final long CHUNK_SIZE = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final ByteBuffer[] chunks;
+
+    private final int size;
+    private final int capacity;
+    private final int bloomWords;
+    private final long tableStart;
+
+    private BoundaryIndex(RandomAccessFile file, ByteBuffer[] chunks, long length) throws IOException {
+        super();
+        this.file = file;
+        this.chunks = chunks;
+
+        if (length < HEADER_SIZE || chunks[0].getInt(0) != MAGIC || chunks[0].getInt(4) != VERSION) {
+            throw new IOException("Not a boundary index file.");
+        }
+        this.size = chunks[0].getInt(8);
+        this.capacity = chunks[0].getInt(12);
+        this.bloomWords = chunks[0].getInt(16);
+        this.tableStart = HEADER_SIZE + (long) bloomWords * 8;
+
+        if (length != tableStart + (long) capacity * SLOT_SIZE) {
+            throw new IOException("Boundary index file is corrupted.");
+        }
+    }
+
+    /**
+     * Opens the index file. The file is memory-mapped read-only.
+     *
+     * @param indexFile the index file
+     * @return the index
+     * @throws IOException if an I/O error occurs or the file is not an index file
+     */
+    public static BoundaryIndex open(File indexFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+        try {
+            long length = file.length();
+            return new BoundaryIndex(file, map(file.getChannel(), FileChannel.MapMode.READ_ONLY, length), length);
+
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the count of keys in the index.
+     *
+     * @return the count of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns false if the key is definitely not in the index. Only the bloom filter is checked.
+     *
+     * @param key the key
+     * @return false if the key is not in the index, true if it might be
+     */
+    public boolean mightContain(long key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long bits = (long) bloomWords * 64;
+
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = ((h1 + i * h2) & 0xFFFFFFFFL) % bits;
+            if ((getLong(chunks, HEADER_SIZE + (bit >>> 6) * 8) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset of the sub-stream of the key in the boundary file.
+     *
+     * @param key the key
+     * @return the offset, or <code>-1</code> if the key is not in the index
+     */
+    public long lookup(long key) {
+        long slot = find(key);
+        return slot == -1 ? -1 : getLong(chunks, slot + 8);
+    }
+
+    /**
+     * Returns the checkpoint right before the sub-stream of the key. A boundary input stream opened at the checkpoint moves to the sub-stream by calling
+     * <code>next()</code>.
+     *
+     * @param key the key
+     * @return the checkpoint, or <code>null</code> if the key is not in the index
+     */
+    public BoundaryCheckpoint checkpoint(long key) {
+        long slot = find(key);
+        if (slot == -1) {
+            return null;
+        }
+        return new BoundaryCheckpoint(getLong(chunks, slot + 16) - 1, getLong(chunks, slot + 8), true, false);
+    }
+
+    /**
+     * Returns the position of the slot of the key in the file, or <code>-1</code> if not found.
+     */
+    private long find(long key) {
+        if (size == 0 || !mightContain(key)) {
+            return -1;
+        }
+        int mask = capacity - 1;
+        for (int i = (int) hash(key) & mask; ; i = (i + 1) & mask) {
+            long slot = tableStart + (long) i * SLOT_SIZE;
+            if (getLong(chunks, slot + 8) == EMPTY) {
+                return -1;
+            }
+            if (getLong(chunks, slot) == key) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Writes the index file. A later entry of the same key replaces an earlier one.
+     * <p>
+     * The file is written through its memory-mapped chunks, so the index is never held in heap.
+     *
+     * @param indexFile the index file
+     * @param keys      the keys
+     * @param offsets   the offsets of sub-streams
+     * @param indexes   the indexes of sub-streams
+     * @param count     the count of entries
+     * @throws IOException if an I/O error occurs or there are too many keys
+     */
+    static void write(File indexFile, long[] keys, long[] offsets, long[] indexes, int count) throws IOException {
+        if (count > MAX_KEYS) {
+            throw new IOException("Boundary index cannot hold more than " + MAX_KEYS + " keys.");
+        }
+        int capacity = 2;
+        while (capacity < count * 2) {
+            capacity <<= 1;
+        }
+        int bloomWords = (int) Math.max(1, ((long) count * BLOOM_BITS_PER_KEY + 63) / 64);
+        long tableStart = HEADER_SIZE + (long) bloomWords * 8;
+        long length = tableStart + (long) capacity * SLOT_SIZE;
+
+        RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+        try {
+            file.setLength(0);
+            file.setLength(length);
+            ByteBuffer[] chunks = map(file.getChannel(), FileChannel.MapMode.READ_WRITE, length);
+
+            long bits = (long) bloomWords * 64;
+            for (int i = 0; i < capacity; i++) {
+                putLong(chunks, tableStart + (long) i * SLOT_SIZE + 8, EMPTY);
+            }
+            int size = 0;
+            int mask = capacity - 1;
+            for (int k = 0; k < count; k++) {
+                long hash = hash(keys[k]);
+                int h1 = (int) hash;
+                int h2 = (int) (hash >>> 32);
+                for (int i = 0; i < BLOOM_HASHES; i++) {
+                    long bit = ((h1 + i * h2) & 0xFFFFFFFFL) % bits;
+                    long word = HEADER_SIZE + (bit >>> 6) * 8;
+                    putLong(chunks, word, getLong(chunks, word) | (1L << bit));
+                }
+
+                long slot;
+                for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+                    slot = tableStart + (long) i * SLOT_SIZE;
+                    if (getLong(chunks, slot + 8) == EMPTY) {
+                        size++;
+                        break;
+                    }
+                    if (getLong(chunks, slot) == keys[k]) {
+                        break;
+                    }
+                }
+                putLong(chunks, slot, keys[k]);
+                putLong(chunks, slot + 8, offsets[k]);
+                putLong(chunks, slot + 16, indexes[k]);
+            }
+
+            chunks[0].putInt(0, MAGIC);
+            chunks[0].putInt(4, VERSION);
+            chunks[0].putInt(8, size);
+            chunks[0].putInt(12, capacity);
+            chunks[0].putInt(16, bloomWords);
+
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Maps the file in chunks. Each chunk overlaps the next one by a long value, so a value starting in a chunk is always read from the same chunk.
+     */
+    private static ByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long length) throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[(int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = i * CHUNK_SIZE;
+            chunks[i] = channel.map(mode, start, Math.min(length - start, CHUNK_SIZE + 8));
+        }
+        return chunks;
+    }
+
+    private static long getLong(ByteBuffer[] chunks, long position) {
+        return chunks[(int) (position / CHUNK_SIZE)].getLong((int) (position % CHUNK_SIZE));
+    }
+
+    private static void putLong(ByteBuffer[] chunks, long position, long value) {
+        chunks[(int) (position / CHUNK_SIZE)].putLong((int) (position % CHUNK_SIZE), value);
+    }
+
+    /**
+     * Mixes the bits of the key (the finalizer of MurmurHash3).
+     */
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Closes the index file. The mapped memory is released when garbage-collected.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -1,9 +1,20 @@
 package cz.net21.ttulka.io;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.zip.Checksum;
 
 /**
  * Boundary input stream decorator class.
@@ -12,15 +23,31 @@ import java.util.NoSuchElementException;
  */
 public class BoundaryInputStream extends InputStream implements Iterable<InputStream> {
 
-    protected final InputStream inputStream;
+    protected InputStream inputStream;
 
-    final int[] boundary;
-    final int[] buffer;
+    final byte[] boundary;
+    final int lookahead;
+    final int trailer;
+    private final BoundaryBufferPool bufferPool;
+    private final Checksum checksum;
     private final BoundaryInputStreamIterator iterator;
+    private SubStreamArena batch;
+    private byte[] filterHeader;
+
+    byte[] buffer;
+    int position = 0;
+    int limit = 0;
+    boolean endOfBaseStream = false;
+    private long baseOffset = 0;
+    long subStreamIndex = -1;
+    int markPosition = -1;
+    private int markLimit = 0;
+    private int checksumPosition = 0;
+
     boolean finished = false;
     boolean started = false;
     boolean endOfCurrentStream = false;
-    private boolean bufferFilled = false;
+    private boolean finishedCheckPending = false;
 
     /**
      * Creates the boundary input stream based on a base input stream.
@@ -40,33 +67,89 @@ public class BoundaryInputStream extends InputStream implements Iterable<InputSt
      * @param boundary    the boundary
      */
     public BoundaryInputStream(InputStream inputStream, byte[] boundary) {
-        this(inputStream, boundary, boundary.length);
+        this(inputStream, boundary, boundary.length, null);
+    }
+
+    /**
+     * Creates the boundary input stream based on a base input stream with an explicit boundary.
+     * <p>
+     * The block buffer is acquired from the pool and released back when the stream is closed.
+     *
+     * @param inputStream the base input stream
+     * @param boundary    the boundary
+     * @param bufferPool  the buffer pool
+     * @throws IllegalArgumentException when the buffers of the pool are shorter than the boundary
+     */
+    public BoundaryInputStream(InputStream inputStream, byte[] boundary, BoundaryBufferPool bufferPool) {
+        this(inputStream, boundary, boundary.length, bufferPool);
+    }
+
+    /**
+     * Creates the boundary input stream based on a base input stream with an explicit boundary, computing the checksum of each sub-stream during the read
+     * pass.
+     *
+     * @param inputStream the base input stream
+     * @param boundary    the boundary
+     * @param checksum    the checksum, e.g. <code>{@link java.util.zip.CRC32}</code>
+     */
+    public BoundaryInputStream(InputStream inputStream, byte[] boundary, Checksum checksum) {
+        this(inputStream, boundary, boundary.length, 0, null, checksum);
+    }
+
+    BoundaryInputStream(InputStream inputStream, byte[] boundary, int lookahead, BoundaryBufferPool bufferPool) {
+        this(inputStream, boundary, lookahead, 0, bufferPool, null);
     }
 
-    BoundaryInputStream(InputStream inputStream, byte[] boundary, int bufferSize) {
+    BoundaryInputStream(InputStream inputStream, byte[] boundary, int lookahead, int trailer, BoundaryBufferPool bufferPool, Checksum checksum) {
         super();
+        if (bufferPool != null && bufferPool.getBufferSize() < lookahead) {
+            throw new IllegalArgumentException("Buffers of the pool must not be shorter than the boundary.");
+        }
         this.inputStream = inputStream;
-        this.boundary = copyBoundary(boundary);
-        this.buffer = new int[bufferSize];
+        this.boundary = boundary.clone();
+        this.lookahead = lookahead;
+        this.trailer = trailer;
+        this.bufferPool = bufferPool;
+        this.checksum = checksum;
+        this.buffer = acquireBuffer();
 
         this.iterator = new BoundaryInputStreamIterator(this);
     }
 
-    int[] copyBoundary(byte[] boundary) {
-        int[] boundaryCopy = new int[boundary.length];
+    /**
+     * Opens the boundary input stream on the file channel at the checkpoint. The channel is positioned at the offset of the checkpoint, so the source is not
+     * read from the beginning.
+     *
+     * @param channel    the file channel
+     * @param boundary   the boundary
+     * @param checkpoint the checkpoint
+     * @return the boundary input stream
+     * @throws IOException if an I/O error occurs
+     */
+    public static BoundaryInputStream open(FileChannel channel, byte[] boundary, BoundaryCheckpoint checkpoint) throws IOException {
+        channel.position(checkpoint.getOffset());
+
+        BoundaryInputStream bis = new BoundaryInputStream(Channels.newInputStream(channel), boundary);
+        bis.restore(checkpoint);
+        return bis;
+    }
 
-        for (int i = 0; i < boundary.length; i++) {
-            boundaryCopy[i] = (int) boundary[i];
+    private byte[] acquireBuffer() {
+        if (bufferPool != null) {
+            return bufferPool.acquire();
         }
-        return boundaryCopy;
+        return new byte[Math.max(BoundaryBufferPool.DEFAULT_BUFFER_SIZE, lookahead)];
     }
 
     /**
      * Returns true if the stream has already reached EOF.
+     * <p>
+     * When a boundary has been reached, this method blocks until the next data or EOF of the base stream is available.
      *
      * @return true if the stream finished, otherwise false
      */
     public boolean hasFinished() {
+        checkFinishedIfPending();
         return finished;
     }
 
@@ -76,25 +159,98 @@ public class BoundaryInputStream extends InputStream implements Iterable<InputSt
      * @throws NoSuchElementException when no more sub-streams
      */
     public void next() {
+        checkFinishedIfPending();
         if (finished) {
             throw new NoSuchElementException("Stream already finished.");
         }
+        markPosition = -1;
+
         if (started && !endOfCurrentStream) {
             consumeCurrentStream();
         }
         started = true;
         endOfCurrentStream = false;
+        subStreamIndex++;
+
+        resetChecksum();
     }
 
     private void consumeCurrentStream() {
         try {
-            while ((this.read()) != -1) {
-                ;
-            }
+            skipSubStream();
+
         } catch (IOException e) {
-            endOfCurrentStream = true;
-            finished = true;
+            skipFailed(e);
+        }
+    }
+
+    /**
+     * Handles an error while skipping the rest of the current sub-stream on <code>next()</code>. The stream finishes.
+     *
+     * @param e the error
+     */
+    void skipFailed(IOException e) {
+        endOfCurrentStream = true;
+        finished = true;
+    }
+
+    /**
+     * Skips the rest of the current sub-stream. The block buffer is scanned for the boundary without copying any data.
+     *
+     * @return the count of bytes skipped
+     * @throws IOException if an I/O error occurs
+     */
+    long skipSubStream() throws IOException {
+        long total = 0;
+        int count;
+        while ((count = scanSubStream(Integer.MAX_VALUE)) != -1) {
+            position += count;
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Moves to the next sub-stream accepted by the filter. The first bytes of each sub-stream are peeked and passed to the filter, a rejected sub-stream is
+     * skipped without copying its data.
+     *
+     * @param headerLength the count of first bytes of a sub-stream passed to the filter
+     * @param filter       the filter
+     * @return true if an accepted sub-stream was found, false if the stream finished
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean nextAccepted(int headerLength, SubStreamFilter filter) throws IOException {
+        // reused for all the calls, grows only for a longer header
+        if (filterHeader == null || filterHeader.length < headerLength) {
+            filterHeader = new byte[headerLength];
+        }
+        while (!hasFinished()) {
+            next();
+
+            int length = peek(filterHeader, 0, headerLength);
+            if (filter.accept(filterHeader, Math.max(length, 0))) {
+                return true;
+            }
+            skipSubStream();
         }
+        return false;
+    }
+
+    /**
+     * Returns an iterable over the sub-streams accepted by the filter.
+     *
+     * @param headerLength the count of first bytes of a sub-stream passed to the filter
+     * @param filter       the filter
+     * @return the iterable of accepted sub-streams
+     * @see #nextAccepted(int, SubStreamFilter)
+     */
+    public Iterable<InputStream> filter(final int headerLength, final SubStreamFilter filter) {
+        return new Iterable<InputStream>() {
+            @Override
+            public Iterator<InputStream> iterator() {
+                return new FilteringBoundaryInputStreamIterator(BoundaryInputStream.this, headerLength, filter);
+            }
+        };
     }
 
     /**
@@ -108,70 +264,619 @@ public class BoundaryInputStream extends InputStream implements Iterable<InputSt
      */
     @Override
     public int read() throws IOException {
-        if (finished) {
+        if (scanSubStream(1) == -1) {
             return -1;
         }
-        if (endOfCurrentStream) {
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of data of the current sub-stream into an array of bytes. The block buffer is scanned for the boundary and the
+     * bytes before it are copied at once.
+     *
+     * @param b   the buffer into which the data is read
+     * @param off the start offset in array <code>b</code> at which the data is written
+     * @param len the maximum number of bytes to read
+     * @return the total number of bytes read into the buffer, or <code>-1</code> if the boundary of the current sub-stream is reached, or if the end of the
+     * base stream is reached
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int count = scanSubStream(len);
+        if (count == -1) {
             return -1;
         }
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
 
-        initBuffer();
+        return count;
+    }
 
-        // are we at the boundary?
-        if (Arrays.equals(buffer, boundary)) {
-            endOfCurrentStream = true;
+    /**
+     * Returns true, the mark and reset methods are supported within the current sub-stream.
+     *
+     * @return true
+     */
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
 
-            fillBufferFromStream();
+    /**
+     * Marks the current position in the current sub-stream. The marked bytes are kept in the block buffer, which grows if needed.
+     * <p>
+     * The mark is invalidated by moving to the next sub-stream. Marking at the end of the sub-stream has no effect.
+     *
+     * @param readlimit the maximum limit of bytes that can be read before the mark position becomes invalid
+     */
+    @Override
+    public void mark(int readlimit) {
+        if (endOfCurrentStream || finished || buffer == null) {
+            markPosition = -1;
+            return;
+        }
+        markPosition = position;
+        markLimit = readlimit;
+    }
 
-            if (buffer[0] == -1) {
-                finished = true;
+    /**
+     * Repositions the stream to the marked position in the current sub-stream. The end of the sub-stream is reset when it was reached after the mark.
+     *
+     * @throws IOException if the stream has not been marked in the current sub-stream or the mark has been invalidated
+     */
+    @Override
+    public void reset() throws IOException {
+        if (markPosition == -1) {
+            throw new IOException("Resetting to invalid mark.");
+        }
+        position = markPosition;
+
+        endOfCurrentStream = false;
+        finished = false;
+        finishedCheckPending = false;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of the current sub-stream without consuming them. The bytes are read again by the next read.
+     * <p>
+     * The peeked bytes are kept in the block buffer, a previous mark is discarded.
+     *
+     * @param b   the buffer into which the data is read
+     * @param off the start offset in array <code>b</code> at which the data is written
+     * @param len the maximum number of bytes to peek
+     * @return the total number of bytes peeked, less than <code>len</code> only if the sub-stream is shorter, or <code>-1</code> if the sub-stream has ended
+     * @throws IOException if an I/O error occurs
+     */
+    public int peek(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (endOfCurrentStream || finished) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        mark(len);
+        int total = 0;
+        try {
+            int count;
+            while (total < len && (count = read(b, off + total, len - total)) != -1) {
+                total += count;
+            }
+        } finally {
+            reset();
+            markPosition = -1;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    /**
+     * Reads the key/value header written by <code>{@link BoundaryOutputStream#header(java.util.Map)}</code> at the beginning of the current sub-stream. Only
+     * the header is read, the body can be read or skipped afterwards.
+     *
+     * @return the header entries in the written order
+     * @throws EOFException if the sub-stream ends before the header
+     * @throws IOException  if an I/O error occurs
+     */
+    public Map<String, String> readHeader() throws IOException {
+        DataInputStream in = new DataInputStream(this);
+
+        int size = in.readUnsignedShort();
+        Map<String, String> header = new LinkedHashMap<String, String>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            header.put(key, in.readUTF());
+        }
+        return header;
+    }
+
+    /**
+     * Reads the rest of the current sub-stream into a new array of the exact size.
+     * <p>
+     * The sub-stream is kept in the block buffer like marked bytes, which grows if needed, and copied into the result at once.
+     *
+     * @return the rest of the current sub-stream, empty if the sub-stream has already ended
+     * @throws IOException if an I/O error occurs
+     */
+    public byte[] readSubStream() throws IOException {
+        int previousMark = markPosition;
+        int previousLimit = markLimit;
+
+        // an existing mark keeps the bytes already, the sub-stream follows it
+        int offset = previousMark != -1 ? position - previousMark : 0;
+        if (previousMark == -1) {
+            markPosition = position;
+        }
+        markLimit = Integer.MAX_VALUE;
+        try {
+            int length = 0;
+            int count;
+            while ((count = scanSubStream(Integer.MAX_VALUE)) != -1) {
+                if ((long) offset + length + count > Integer.MAX_VALUE - lookahead) {
+                    throw new IOException("Sub-stream is too long to fit into an array.");
+                }
+                position += count;
+                length += count;
+            }
+            if (length == 0) {
+                return new byte[0];
+            }
+            byte[] result = new byte[length];
+            System.arraycopy(buffer, markPosition + offset, result, 0, length);
+            return result;
+
+        } finally {
+            if (previousMark == -1) {
+                markPosition = -1;
+            }
+            markLimit = previousLimit;
+        }
+    }
+
+    /**
+     * Reads the rest of the current sub-stream into the byte buffer. The reading stops when the byte buffer is full, the rest of the sub-stream can be read
+     * by next calls.
+     *
+     * @param dst the byte buffer
+     * @return the count of bytes read, or <code>-1</code> if the boundary of the current sub-stream is reached, or if the end of the base stream is reached
+     * @throws IOException if an I/O error occurs
+     */
+    public int readSubStreamInto(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        int total = 0;
+        int count;
+        while (dst.hasRemaining() && (count = scanSubStream(dst.remaining())) != -1) {
+            dst.put(buffer, position, count);
+            position += count;
+            total += count;
+        }
+        return total == 0 && endOfCurrentStream ? -1 : total;
+    }
+
+    /**
+     * Transfers the rest of the current sub-stream into the output stream. The data is written directly from the block buffer.
+     *
+     * @param out the output stream
+     * @return the count of bytes transferred
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferSubStreamTo(OutputStream out) throws IOException {
+        long total = 0;
+        int count;
+        while ((count = scanSubStream(Integer.MAX_VALUE)) != -1) {
+            out.write(buffer, position, count);
+            position += count;
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Transfers the rest of the current sub-stream into the channel. The data is written directly from the block buffer.
+     *
+     * @param out the channel
+     * @return the count of bytes transferred
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferSubStreamTo(WritableByteChannel out) throws IOException {
+        ByteBuffer src = null;
+        long total = 0;
+        int count;
+        while ((count = scanSubStream(Integer.MAX_VALUE)) != -1) {
+            if (src == null || src.array() != buffer) {
+                src = ByteBuffer.wrap(buffer);
+            }
+            src.limit(position + count).position(position);
+            while (src.hasRemaining()) {
+                out.write(src);
             }
+            position += count;
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Buffers the rest of the current sub-stream to be read repeatedly. The sub-stream is held in heap up to the threshold and spilled into a temporary file
+     * in the default temporary directory above it.
+     *
+     * @param threshold the max count of bytes held in heap
+     * @return the buffer, must be closed to delete the temporary file
+     * @throws IOException if an I/O error occurs
+     */
+    public SubStreamBuffer bufferSubStream(int threshold) throws IOException {
+        return bufferSubStream(threshold, null);
+    }
+
+    /**
+     * Buffers the rest of the current sub-stream to be read repeatedly. The sub-stream is held in heap up to the threshold and spilled into a temporary file
+     * above it.
+     *
+     * @param threshold the max count of bytes held in heap
+     * @param directory the directory for the temporary file, or null for the default temporary directory
+     * @return the buffer, must be closed to delete the temporary file
+     * @throws IOException if an I/O error occurs
+     */
+    public SubStreamBuffer bufferSubStream(int threshold, File directory) throws IOException {
+        SubStreamBuffer subStreamBuffer = new SubStreamBuffer(threshold, directory);
+        try {
+            transferSubStreamTo(subStreamBuffer.writer());
+            subStreamBuffer.finish();
+            return subStreamBuffer;
+
+        } catch (IOException e) {
+            subStreamBuffer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads next whole sub-streams into the arena. The arena is cleared first, the rest of the current sub-stream is skipped.
+     * <p>
+     * The reading stops after the count of sub-streams, when the capacity of the arena is reached, or when the stream finished.
+     *
+     * @param arena         the arena
+     * @param maxSubStreams the max count of sub-streams to read
+     * @return the count of sub-streams read
+     * @throws IOException if an I/O error occurs
+     */
+    public int readSubStreams(SubStreamArena arena, int maxSubStreams) throws IOException {
+        fillArena(arena, maxSubStreams, arena.capacity());
+        return arena.count();
+    }
+
+    /**
+     * Reads a batch of next whole sub-streams. The rest of the current sub-stream is skipped.
+     * <p>
+     * The batch is read into an arena owned by the stream, which is reused by the next batch. The arena starts small and grows with the data, the data of
+     * sub-streams is copied from the block buffer directly into the arena. No more sub-streams are read when the count of records or bytes is reached, so
+     * the last sub-stream of the batch can exceed the count of bytes.
+     *
+     * @param maxRecords the max count of sub-streams in the batch
+     * @param maxBytes   the count of bytes after which no more sub-streams are read
+     * @return the batch, valid until the next batch is read; empty when the stream finished
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException when the count of records or bytes is not positive
+     */
+    public SubStreamArena readBatch(int maxRecords, int maxBytes) throws IOException {
+        if (maxRecords <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Count of records and bytes must be positive.");
+        }
+        // the count of bytes is a soft limit, the arena grows when needed
+        if (batch == null || batch.maxSubStreams() < maxRecords) {
+            batch = new SubStreamArena(Math.min(maxBytes, BoundaryBufferPool.DEFAULT_BUFFER_SIZE), maxRecords);
+        }
+        fillArena(batch, maxRecords, maxBytes);
+        return batch;
+    }
+
+    /**
+     * Claims the next whole sub-stream into the arena of the calling consumer. The arena is cleared first, the rest of the current sub-stream is skipped.
+     * <p>
+     * This method is thread-safe, concurrent consumers claim different sub-streams. Only scanning of the base stream is serialized, a claimed sub-stream is
+     * processed from the arena owned by its consumer. The stream must not be read by other methods while shared by consumers.
+     *
+     * @param arena the arena of the consumer
+     * @return the index of the claimed sub-stream, or <code>-1</code> if the stream finished
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized long claimNext(SubStreamArena arena) throws IOException {
+        arena.clear();
+        if (hasFinished()) {
+            return -1;
+        }
+        next();
+        arena.startSubStream();
+        appendSubStreamTo(arena);
+        return subStreamIndex;
+    }
+
+    private void fillArena(SubStreamArena arena, int maxSubStreams, int maxBytes) throws IOException {
+        arena.clear();
+        int max = Math.min(maxSubStreams, arena.maxSubStreams());
 
+        while (arena.count() < max && arena.size() < maxBytes && !hasFinished()) {
+            next();
+            arena.startSubStream();
+            appendSubStreamTo(arena);
+        }
+    }
+
+    /**
+     * Appends the rest of the current sub-stream to the last sub-stream of the arena. The data is copied directly from the block buffer.
+     */
+    void appendSubStreamTo(SubStreamArena arena) throws IOException {
+        int count;
+        while ((count = scanSubStream(Integer.MAX_VALUE)) != -1) {
+            arena.ensureFree(count);
+            System.arraycopy(buffer, position, arena.array(), arena.size(), count);
+            position += count;
+            arena.appended(count);
+        }
+    }
+
+    /**
+     * Scans the block buffer for the next boundary. Returns the count of bytes of the current sub-stream available in the buffer from the current position.
+     * <p>
+     * When the boundary is reached, it is consumed and <code>-1</code> is returned.
+     *
+     * @param maxLength the maximal count of bytes to scan
+     * @return the count of bytes available, or <code>-1</code> if the current sub-stream has ended
+     * @throws IOException if an I/O error occurs
+     */
+    int scanSubStream(int maxLength) throws IOException {
+        if (finished) {
+            return -1;
+        }
+        if (endOfCurrentStream) {
             return -1;
         }
+        updateChecksum();
 
-        // read always from the top of the buffer
-        int currentByte = readByteToBufferAndGet();
+        fillBuffer(lookahead);
 
+        // are we at the boundary?
+        if (consumeBoundary()) {
+            checksumPosition = position;
+            return -1;
+        }
         // finish the reading
-        if (currentByte == -1) {
+        if (endOfBaseStream && limit - position <= trailer) {
+            if (position < limit) {
+                consumeTrailer();
+            }
             endOfCurrentStream = true;
             finished = true;
+            checksumPosition = position;
 
             return -1;
         }
 
-        return currentByte;
+        // a boundary can be recognized only where the full lookahead is in the buffer
+        int scanLimit = endOfBaseStream ? limit - trailer : limit - lookahead + 1;
+        if (scanLimit - position > maxLength) {
+            scanLimit = position + maxLength;
+        }
+        int index = position + 1;
+        while (index < scanLimit && !isBoundaryAt(index)) {
+            index++;
+        }
+        return index - position;
     }
 
-    void initBuffer() throws IOException {
-        if (!bufferFilled) {
-            fillBufferFromStream();
+    /**
+     * Checks whether the current position is at the boundary. If so, the boundary is consumed and the current sub-stream is ended.
+     *
+     * @return true if the boundary was reached, otherwise false
+     * @throws IOException if an I/O error occurs
+     */
+    boolean consumeBoundary() throws IOException {
+        if (!BoundaryStreamUtils.startsWith(buffer, limit, position, boundary)) {
+            return false;
+        }
+        endOfCurrentStream = true;
+
+        // remove this boundary bytes, the rest is checked lazily not to wait for the next data
+        position += boundary.length;
+        finishedCheckPending = true;
 
-            bufferFilled = true;
+        return true;
+    }
+
+    /**
+     * Consumes the trailer of the last sub-stream at the end of the base stream. Only for streams with a trailer after each sub-stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void consumeTrailer() throws IOException {
+    }
+
+    /**
+     * Adds the bytes consumed since the last update to the checksum. Bytes read again after a reset are not added twice.
+     */
+    private void updateChecksum() {
+        if (checksum != null && position > checksumPosition) {
+            checksum.update(buffer, checksumPosition, position - checksumPosition);
+            checksumPosition = position;
+        }
+    }
+
+    private void resetChecksum() {
+        if (checksum != null) {
+            checksum.reset();
+        }
+        checksumPosition = position;
+    }
+
+    /**
+     * Returns the checksum of the bytes of the current sub-stream read so far. The checksum is complete when the sub-stream has ended.
+     *
+     * @return the checksum value
+     * @throws IllegalStateException if the stream computes no checksum
+     */
+    public long getChecksum() {
+        if (checksum == null) {
+            throw new IllegalStateException("No checksum is computed.");
         }
+        updateChecksum();
+        return checksum.getValue();
     }
 
-    private void fillBufferFromStream() throws IOException {
-        for (int i = 0; i < buffer.length; i++) {
-            buffer[i] = inputStream.read();
+    private void checkFinishedIfPending() {
+        if (finishedCheckPending) {
+            finishedCheckPending = false;
+            try {
+                checkFinished();
+
+            } catch (IOException e) {
+                finished = true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the stream finished after a boundary was reached.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void checkFinished() throws IOException {
+        fillBuffer(lookahead);
+
+        if (position == limit) {
+            finished = true;
+        }
+    }
+
+    /**
+     * Returns true if any boundary starts at the index of the buffer.
+     *
+     * @param index the index in the buffer
+     * @return true if a boundary starts at the index, otherwise false
+     */
+    boolean isBoundaryAt(int index) {
+        return BoundaryStreamUtils.startsWith(buffer, limit, index, boundary);
+    }
 
-            if (buffer[i] == -1) {
-                Arrays.fill(buffer, i + 1, buffer.length, -1);
+    /**
+     * Fills the buffer from the base stream to contain at least the length of bytes from the current position, unless the base stream reaches EOF.
+     *
+     * @param length the minimal count of available bytes
+     * @throws IOException if an I/O error occurs
+     */
+    void fillBuffer(int length) throws IOException {
+        if (limit - position >= length || endOfBaseStream) {
+            return;
+        }
+        // the marked bytes are kept unless read over the read limit
+        if (markPosition != -1 && position - markPosition > markLimit) {
+            markPosition = -1;
+        }
+        int keep = markPosition != -1 ? markPosition : position;
+        if (keep > 0) {
+            updateChecksum();
+
+            System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+            limit -= keep;
+            position -= keep;
+            checksumPosition -= keep;
+            if (markPosition != -1) {
+                markPosition = 0;
+            }
+        }
+        if (position + length > buffer.length) {
+            growBuffer(position + length);
+        }
+        while (limit - position < length) {
+            int read = inputStream.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                endOfBaseStream = true;
                 break;
             }
+            limit += read;
+            baseOffset += read;
         }
     }
 
-    int readByteToBufferAndGet() throws IOException {
-        int currentByte = buffer[0];
+    private void growBuffer(int size) {
+        byte[] bigger = new byte[Math.max(size, buffer.length * 2)];
+        System.arraycopy(buffer, 0, bigger, 0, limit);
 
-        // shift the buffer to the top (first byte will be returned)
-        System.arraycopy(buffer, 1, buffer, 0, buffer.length - 1);
+        releaseBuffer();
+        buffer = bigger;
+    }
 
-        buffer[buffer.length - 1] = inputStream.read();
+    /**
+     * Releases the buffer back to the pool, a grown buffer is not pooled.
+     */
+    private void releaseBuffer() {
+        if (bufferPool != null && buffer.length == bufferPool.getBufferSize()) {
+            bufferPool.release(buffer);
+        }
+    }
 
-        return currentByte;
+    /**
+     * Returns the checkpoint of the current position in the base stream.
+     *
+     * @return the checkpoint
+     */
+    public BoundaryCheckpoint getCheckpoint() {
+        return new BoundaryCheckpoint(subStreamIndex, baseOffset - (limit - position), endOfCurrentStream, finished);
+    }
+
+    /**
+     * Restores the state from the checkpoint. The base stream must be positioned at the offset of the checkpoint.
+     *
+     * @param checkpoint the checkpoint
+     */
+    void restore(BoundaryCheckpoint checkpoint) {
+        position = 0;
+        limit = 0;
+        markPosition = -1;
+        resetChecksum();
+        baseOffset = checkpoint.getOffset();
+        subStreamIndex = checkpoint.getSubStreamIndex();
+
+        started = subStreamIndex >= 0;
+        endOfCurrentStream = checkpoint.isEndOfSubStream();
+        finished = checkpoint.isFinished();
+        finishedCheckPending = endOfCurrentStream && !finished;
+    }
+
+    /**
+     * Resets the stream to read from a new base input stream.
+     * <p>
+     * The boundary, the block buffer and the iterator are reused, so one instance can be recycled for many base streams without allocating any memory. The
+     * previous base input stream is not closed by this method. A closed stream can be reset as well.
+     *
+     * @param inputStream the new base input stream
+     */
+    public void reset(InputStream inputStream) {
+        this.inputStream = inputStream;
+        if (buffer == null) {
+            buffer = acquireBuffer();
+        }
+        position = 0;
+        limit = 0;
+        markPosition = -1;
+        resetChecksum();
+        endOfBaseStream = false;
+        baseOffset = 0;
+        subStreamIndex = -1;
+
+        finished = false;
+        started = false;
+        endOfCurrentStream = false;
+        finishedCheckPending = false;
     }
 
     @Override
@@ -179,11 +884,21 @@ public class BoundaryInputStream extends InputStream implements Iterable<InputSt
         return this.iterator;
     }
 
+    /**
+     * Closes the stream and the base stream. The block buffer is released back to the buffer pool, if any.
+     *
+     * @throws IOException if an I/O error occurs
+     */
     @Override
     public void close() throws IOException {
         endOfCurrentStream = true;
         finished = true;
 
+        if (buffer != null && bufferPool != null) {
+            releaseBuffer();
+            buffer = null;
+        }
+
         super.close();
         inputStream.close();
     }
@@ -1,7 +1,11 @@
 package cz.net21.ttulka.io;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.Checksum;
 
 /**
  * Boundary output stream decorator class.
@@ -13,6 +17,8 @@ public class BoundaryOutputStream extends OutputStream {
     protected final OutputStream outputStream;
     protected final byte[] boundary;
 
+    private final Checksum checksum;
+
     /**
      * Creates the boundary output stream based on a base output stream.
      * <p>
@@ -31,23 +37,97 @@ public class BoundaryOutputStream extends OutputStream {
      * @param boundary     the boundary
      */
     public BoundaryOutputStream(OutputStream outputStream, byte[] boundary) {
+        this(outputStream, boundary, null);
+    }
+
+    /**
+     * Creates the boundary output stream based on a base output stream with an explicit boundary, computing the checksum of each sub-stream.
+     *
+     * @param outputStream the base output stream
+     * @param boundary     the boundary
+     * @param checksum     the checksum, e.g. <code>{@link java.util.zip.CRC32}</code>
+     */
+    public BoundaryOutputStream(OutputStream outputStream, byte[] boundary, Checksum checksum) {
         super();
         this.outputStream = outputStream;
         this.boundary = boundary;
+        this.checksum = checksum;
     }
 
     /**
-     * Writes the boundary into the base stream.
+     * Writes the boundary into the base stream. The checksum starts from the beginning for the next sub-stream.
      *
      * @throws IOException if an I/O error occurs
      */
     public void boundary() throws IOException {
         outputStream.write(boundary);
+
+        if (checksum != null) {
+            checksum.reset();
+        }
+    }
+
+    /**
+     * Returns the checksum of the bytes of the current sub-stream written so far.
+     *
+     * @return the checksum value
+     * @throws IllegalStateException if the stream computes no checksum
+     */
+    public long getChecksum() {
+        if (checksum == null) {
+            throw new IllegalStateException("No checksum is computed.");
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * Writes the key/value header of a sub-stream. Must be called at the beginning of the sub-stream, before its body.
+     * <p>
+     * The header is written as the count of entries followed by the keys and values in the modified UTF-8 encoding, as by <code>{@link
+     * DataOutputStream}</code>. It is read by <code>{@link BoundaryInputStream#readHeader()}</code>.
+     *
+     * @param header the header
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException when the header has too many entries
+     */
+    public void header(Map<String, String> header) throws IOException {
+        if (header.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Header cannot have more than 65535 entries.");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeShort(header.size());
+        for (Map.Entry<String, String> entry : header.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.flush();
+
+        bytes.writeTo(this);
     }
 
     @Override
     public void write(int b) throws IOException {
         outputStream.write(b);
+
+        if (checksum != null) {
+            checksum.update(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        outputStream.write(b, off, len);
+
+        if (checksum != null) {
+            checksum.update(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        outputStream.flush();
     }
 
     @Override
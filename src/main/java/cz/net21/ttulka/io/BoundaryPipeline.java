@@ -0,0 +1,244 @@
+package cz.net21.ttulka.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pipelined boundary stream decoder.
+ * <p>
+ * One thread only scans blocks of the base stream for boundaries and publishes slices of the blocks into a bounded queue. Worker threads consume the slices
+ * directly from the shared reference-counted blocks, without copying them. A sub-stream crossing the end of a block is moved into the next block, so every
+ * slice is contiguous. Sub-streams are handled concurrently, their order is given by {@link SubStreamSlice#index()}.
+ *
+ * @author ttulka
+ */
+public class BoundaryPipeline implements Closeable {
+
+    /**
+     * Default capacity of the slice queue.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final SubStreamSlice END = new SubStreamSlice(new SubStreamSlice.Block(new byte[0], null), -1, 0, 0);
+
+    protected final InputStream inputStream;
+    protected final byte[] boundary;
+
+    private final int workers;
+    private final int queueCapacity;
+    private final BoundaryBufferPool bufferPool;
+
+    /**
+     * Creates the pipeline based on a base input stream.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code>.
+     *
+     * @param inputStream the base input stream
+     * @param workers     the count of worker threads
+     */
+    public BoundaryPipeline(InputStream inputStream, int workers) {
+        this(inputStream, BoundaryStreamConsts.BOUNDARY, workers);
+    }
+
+    /**
+     * Creates the pipeline based on a base input stream with an explicit boundary.
+     *
+     * @param inputStream the base input stream
+     * @param boundary    the boundary
+     * @param workers     the count of worker threads
+     */
+    public BoundaryPipeline(InputStream inputStream, byte[] boundary, int workers) {
+        this(inputStream, boundary, workers, DEFAULT_QUEUE_CAPACITY, new BoundaryBufferPool(Math.max(BoundaryBufferPool.DEFAULT_BUFFER_SIZE, boundary.length),
+                                                                                          workers + 2));
+    }
+
+    /**
+     * Creates the pipeline based on a base input stream with an explicit boundary.
+     *
+     * @param inputStream   the base input stream
+     * @param boundary      the boundary
+     * @param workers       the count of worker threads
+     * @param queueCapacity the capacity of the slice queue
+     * @param bufferPool    the pool of blocks
+     * @throws IllegalArgumentException when the count of workers or the queue capacity is not positive, or when the blocks of the pool are shorter than the
+     *                                  boundary
+     */
+    public BoundaryPipeline(InputStream inputStream, byte[] boundary, int workers, int queueCapacity, BoundaryBufferPool bufferPool) {
+        super();
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Count of workers must be positive.");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+        if (bufferPool.getBufferSize() < boundary.length) {
+            throw new IllegalArgumentException("Buffers of the pool must not be shorter than the boundary.");
+        }
+        this.inputStream = inputStream;
+        this.boundary = boundary.clone();
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Processes all sub-streams of the base stream by the handler. The calling thread scans the base stream, the handler is called from the worker threads.
+     * <p>
+     * The processing stops on the first failure of the handler, the failure is rethrown.
+     *
+     * @param handler the sub-stream handler
+     * @return the count of sub-streams processed
+     * @throws IOException if an I/O error occurs or the handler failed
+     */
+    public long run(final SubStreamHandler handler) throws IOException {
+        final BlockingQueue<SubStreamSlice> queue = new ArrayBlockingQueue<SubStreamSlice>(queueCapacity);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread[] threads = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(handler, queue, failure);
+                }
+            }, "boundary-pipeline-worker-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        long count = 0;
+        try {
+            count = scan(queue, failure);
+
+        } finally {
+            try {
+                for (int i = 0; i < workers; i++) {
+                    queue.put(END);
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for workers.");
+            }
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw new IOException("Handler failed: " + t.getMessage());
+        }
+        return count;
+    }
+
+    private void work(SubStreamHandler handler, BlockingQueue<SubStreamSlice> queue, AtomicReference<Throwable> failure) {
+        try {
+            SubStreamSlice slice;
+            while ((slice = queue.take()) != END) {
+                try {
+                    if (failure.get() == null) {
+                        handler.handle(slice);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+
+                } finally {
+                    slice.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scans the base stream and publishes slices into the queue.
+     *
+     * @return the count of sub-streams published
+     */
+    private long scan(BlockingQueue<SubStreamSlice> queue, AtomicReference<Throwable> failure) throws IOException {
+        SubStreamSlice.Block block = new SubStreamSlice.Block(bufferPool.acquire(), bufferPool);
+        int start = 0;
+        int index = 0;
+        int limit = 0;
+        long count = 0;
+
+        try {
+            while (failure.get() == null) {
+                // publish all sub-streams in the block
+                while (limit - index >= boundary.length) {
+                    if (BoundaryStreamUtils.startsWith(block.data, limit, index, boundary)) {
+                        publish(queue, new SubStreamSlice(block, count++, start, index - start));
+                        index += boundary.length;
+                        start = index;
+                    } else {
+                        index++;
+                    }
+                }
+
+                // move the unfinished sub-stream into a new block
+                if (limit == block.data.length) {
+                    int pending = limit - start;
+                    SubStreamSlice.Block next = new SubStreamSlice.Block(newBlockData(pending), bufferPool);
+                    System.arraycopy(block.data, start, next.data, 0, pending);
+                    block.release();
+
+                    block = next;
+                    index -= start;
+                    limit = pending;
+                    start = 0;
+                }
+
+                int read = inputStream.read(block.data, limit, block.data.length - limit);
+                if (read == -1) {
+                    // the last sub-stream without a boundary at the end
+                    if (limit > start || count == 0) {
+                        publish(queue, new SubStreamSlice(block, count++, start, limit - start));
+                    }
+                    break;
+                }
+                limit += read;
+            }
+        } finally {
+            block.release();
+        }
+        return count;
+    }
+
+    private byte[] newBlockData(int pending) {
+        if (pending <= bufferPool.getBufferSize() / 2) {
+            return bufferPool.acquire();
+        }
+        return new byte[Math.max(bufferPool.getBufferSize(), pending) * 2];
+    }
+
+    private void publish(BlockingQueue<SubStreamSlice> queue, SubStreamSlice slice) throws IOException {
+        try {
+            queue.put(slice);
+
+        } catch (InterruptedException e) {
+            slice.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while publishing a sub-stream.");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
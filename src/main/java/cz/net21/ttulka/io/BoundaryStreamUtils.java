@@ -0,0 +1,63 @@
+package cz.net21.ttulka.io;
+
+/**
+ * Utility class for working with boundaries.
+ *
+ * @author ttulka
+ */
+final class BoundaryStreamUtils {
+
+    private BoundaryStreamUtils() {
+        throw new IllegalStateException("Cannot create an instance of this class.");
+    }
+
+    /**
+     * Checks whether the array contains the pattern at the index.
+     *
+     * @param array   the array
+     * @param limit   the end index (exclusive) of valid data in the array
+     * @param index   the index to check
+     * @param pattern the pattern
+     * @return true if the pattern starts at the index, otherwise false
+     */
+    static boolean startsWith(byte[] array, int limit, int index, byte[] pattern) {
+        if (limit - index < pattern.length) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (array[index + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the first array contains the second one.
+     *
+     * @param array   the array
+     * @param pattern the pattern
+     * @return true if the pattern is a part of the array, otherwise false
+     */
+    static boolean contains(byte[] array, byte[] pattern) {
+        for (int i = 0; i <= array.length - pattern.length; i++) {
+            if (startsWith(array, array.length, i, pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the boundary and the stop boundary are not substrings of each other.
+     *
+     * @param boundary     the boundary
+     * @param stopBoundary the stop boundary
+     * @throws IllegalArgumentException when the boundary is a substring of the stop boundary or vice versa
+     */
+    static void checkBoundaries(byte[] boundary, byte[] stopBoundary) {
+        if (contains(boundary, stopBoundary) || contains(stopBoundary, boundary)) {
+            throw new IllegalArgumentException("The boundary cannot be a substring of the stop boundary or vice versa.");
+        }
+    }
+}
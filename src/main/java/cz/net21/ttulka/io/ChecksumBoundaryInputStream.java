@@ -0,0 +1,132 @@
+package cz.net21.ttulka.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Checksum boundary input stream class.
+ * <p>
+ * Reads sub-streams written by <code>{@link ChecksumBoundaryOutputStream}</code>. The checksum of each sub-stream is computed during the read pass and
+ * verified against its trailer when the end of the sub-stream is reached. The trailer is not part of the sub-stream data.
+ * <p>
+ * A skipped sub-stream is verified as well. A mismatch of a sub-stream skipped by <code>next()</code> is thrown as
+ * <code>{@link IllegalStateException}</code> with the <code>{@link IOException}</code> as the cause; the corrupted sub-stream has been consumed, so the
+ * reading can continue by calling <code>next()</code> again.
+ *
+ * @author ttulka
+ */
+public class ChecksumBoundaryInputStream extends BoundaryInputStream {
+
+    private final int[] digits = new int[256];
+
+    /**
+     * Creates the checksum boundary input stream based on a base input stream.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code> and the CRC-32 checksum.
+     *
+     * @param inputStream the base input stream
+     */
+    public ChecksumBoundaryInputStream(InputStream inputStream) {
+        this(inputStream, BoundaryStreamConsts.BOUNDARY, new CRC32());
+    }
+
+    /**
+     * Creates the checksum boundary input stream based on a base input stream with an explicit boundary.
+     *
+     * @param inputStream the base input stream
+     * @param boundary    the boundary
+     * @param checksum    the checksum, the same as used for writing
+     * @throws IllegalArgumentException when the boundary contains more than 240 distinct bytes
+     */
+    public ChecksumBoundaryInputStream(InputStream inputStream, byte[] boundary, Checksum checksum) {
+        super(inputStream, boundary, boundary.length + ChecksumBoundaryOutputStream.TRAILER_LENGTH, ChecksumBoundaryOutputStream.TRAILER_LENGTH, null,
+              checksum);
+
+        Arrays.fill(digits, -1);
+        byte[] alphabet = ChecksumBoundaryOutputStream.trailerAlphabet(boundary);
+        for (int i = 0; i < alphabet.length; i++) {
+            digits[alphabet[i] & 0xFF] = i;
+        }
+    }
+
+    /**
+     * Moves to the next sub-stream. The rest of the current sub-stream is skipped and verified.
+     *
+     * @throws IllegalStateException when the skipped sub-stream is corrupted, <code>next()</code> can be called again to move to the following sub-stream
+     * @throws java.util.NoSuchElementException when no more sub-streams
+     */
+    @Override
+    public void next() {
+        super.next();
+    }
+
+    @Override
+    void skipFailed(IOException e) {
+        if (!endOfCurrentStream) {
+            super.skipFailed(e);
+        }
+        // corruption must not be hidden as the end of the stream
+        throw new IllegalStateException(e.getMessage(), e);
+    }
+
+    @Override
+    boolean consumeBoundary() throws IOException {
+        if (!BoundaryStreamUtils.startsWith(buffer, limit, position + trailer, boundary)) {
+            return false;
+        }
+        boolean valid = consumeAndVerifyTrailer();
+        super.consumeBoundary();
+
+        if (!valid) {
+            throw new IOException("Checksum mismatch of the sub-stream.");
+        }
+        return true;
+    }
+
+    @Override
+    void consumeTrailer() throws IOException {
+        String error = null;
+        if (limit - position < trailer) {
+            error = "Checksum of the sub-stream is missing.";
+
+        } else if (!consumeAndVerifyTrailer()) {
+            error = "Checksum mismatch of the sub-stream.";
+        }
+        if (error != null) {
+            position = limit;
+            endOfCurrentStream = true;
+            finished = true;
+
+            throw new IOException(error);
+        }
+    }
+
+    @Override
+    boolean isBoundaryAt(int index) {
+        return super.isBoundaryAt(index + trailer);
+    }
+
+    /**
+     * Compares the trailer at the current position with the computed checksum. The trailer is consumed in any case.
+     *
+     * @return true if the checksum matches, otherwise false
+     */
+    private boolean consumeAndVerifyTrailer() {
+        long expected = 0;
+        boolean valid = true;
+        for (int i = 0; i < trailer; i++) {
+            int digit = digits[buffer[position + i] & 0xFF];
+            if (digit == -1) {
+                valid = false;
+            }
+            expected = (expected << 4) | digit;
+        }
+        valid = valid && expected == getChecksum();
+
+        position += trailer;
+        return valid;
+    }
+}
@@ -0,0 +1,130 @@
+package cz.net21.ttulka.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Checksum boundary output stream class.
+ * <p>
+ * Appends the checksum of each sub-stream as a 16-byte trailer before its boundary. The stream is read and verified by <code>{@link
+ * ChecksumBoundaryInputStream}</code>.
+ * <p>
+ * Each 4-bit digit of the 64-bit checksum is written as a byte of an alphabet not containing any byte of the boundary, so the trailer never forms the
+ * boundary or its part.
+ *
+ * @author ttulka
+ */
+public class ChecksumBoundaryOutputStream extends BoundaryOutputStream {
+
+    /**
+     * Length of the checksum trailer in bytes.
+     */
+    public static final int TRAILER_LENGTH = 16;
+
+    private static final int ALPHABET_SIZE = 16;
+
+    private final byte[] alphabet;
+    private final byte[] trailer = new byte[TRAILER_LENGTH];
+    private boolean written = false;
+
+    /**
+     * Creates the checksum boundary output stream based on a base output stream.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code> and the CRC-32 checksum.
+     *
+     * @param outputStream the base output stream
+     */
+    public ChecksumBoundaryOutputStream(OutputStream outputStream) {
+        this(outputStream, BoundaryStreamConsts.BOUNDARY, new CRC32());
+    }
+
+    /**
+     * Creates the checksum boundary output stream based on a base output stream with an explicit boundary.
+     *
+     * @param outputStream the base output stream
+     * @param boundary     the boundary
+     * @param checksum     the checksum
+     * @throws IllegalArgumentException when the boundary contains more than 240 distinct bytes
+     */
+    public ChecksumBoundaryOutputStream(OutputStream outputStream, byte[] boundary, Checksum checksum) {
+        super(outputStream, boundary, checksum);
+        this.alphabet = trailerAlphabet(boundary);
+    }
+
+    /**
+     * Returns the digits of the trailer: the first sixteen bytes from <code>'A'</code> upwards not contained in the boundary.
+     *
+     * @param boundary the boundary
+     * @return the alphabet
+     * @throws IllegalArgumentException when the boundary contains more than 240 distinct bytes
+     */
+    static byte[] trailerAlphabet(byte[] boundary) {
+        boolean[] used = new boolean[256];
+        for (byte b : boundary) {
+            used[b & 0xFF] = true;
+        }
+        byte[] alphabet = new byte[ALPHABET_SIZE];
+        int count = 0;
+        for (int i = 0; i < 256 && count < ALPHABET_SIZE; i++) {
+            int b = ('A' + i) & 0xFF;
+            if (!used[b]) {
+                alphabet[count++] = (byte) b;
+            }
+        }
+        if (count < ALPHABET_SIZE) {
+            throw new IllegalArgumentException("Boundary must not contain more than 240 distinct bytes.");
+        }
+        return alphabet;
+    }
+
+    /**
+     * Writes the checksum of the current sub-stream and the boundary into the base stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void boundary() throws IOException {
+        writeTrailer();
+        super.boundary();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        super.write(b);
+        written = true;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        written = true;
+    }
+
+    private void writeTrailer() throws IOException {
+        long value = getChecksum();
+        for (int i = TRAILER_LENGTH - 1; i >= 0; i--) {
+            trailer[i] = alphabet[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        outputStream.write(trailer);
+        written = false;
+    }
+
+    /**
+     * Writes the checksum of the last sub-stream, if not empty, and closes the stream and the base stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (written) {
+                writeTrailer();
+            }
+        } finally {
+            super.close();
+        }
+    }
+}
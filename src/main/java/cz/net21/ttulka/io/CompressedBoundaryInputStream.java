@@ -0,0 +1,335 @@
+package cz.net21.ttulka.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed boundary input stream class.
+ * <p>
+ * Reads sub-streams written by <code>{@link CompressedBoundaryOutputStream}</code>; each sub-stream is inflated transparently. Skipping a sub-stream does not
+ * inflate it.
+ * <p>
+ * The first inflated bytes of a sub-stream can be peeked, so the sub-streams can be filtered. Mark and reset are not supported.
+ *
+ * @author ttulka
+ */
+public class CompressedBoundaryInputStream extends BoundaryInputStream {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final BoundaryEscaper escaper;
+    private Inflater inflater = new Inflater();
+
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private final byte[] single = new byte[1];
+    private boolean inputStarted = false;
+
+    // inflated bytes peeked and not read yet
+    private byte[] peeked = new byte[0];
+    private int peekedPosition = 0;
+    private int peekedLimit = 0;
+
+    /**
+     * Creates the compressed boundary input stream based on a base input stream.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code>.
+     *
+     * @param inputStream the base input stream
+     */
+    public CompressedBoundaryInputStream(InputStream inputStream) {
+        this(inputStream, BoundaryStreamConsts.BOUNDARY);
+    }
+
+    /**
+     * Creates the compressed boundary input stream based on a base input stream with an explicit boundary.
+     *
+     * @param inputStream the base input stream
+     * @param boundary    the boundary
+     */
+    public CompressedBoundaryInputStream(InputStream inputStream, byte[] boundary) {
+        super(inputStream, boundary);
+        this.escaper = new BoundaryEscaper(boundary);
+    }
+
+    @Override
+    public void next() {
+        super.next();
+        resetInflater();
+    }
+
+    private void resetInflater() {
+        if (inflater == null) {
+            inflater = new Inflater();
+        } else {
+            inflater.reset();
+        }
+        escaper.reset();
+        inputStarted = false;
+        peekedPosition = 0;
+        peekedLimit = 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of the inflated data of the current sub-stream into an array of bytes.
+     *
+     * @param b   the buffer into which the data is read
+     * @param off the start offset in array <code>b</code> at which the data is written
+     * @param len the maximum number of bytes to read
+     * @return the total number of bytes read into the buffer, or <code>-1</code> if the current sub-stream has ended
+     * @throws IOException if an I/O error occurs or the compressed data is corrupted
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (peekedPosition < peekedLimit) {
+            int count = Math.min(len, peekedLimit - peekedPosition);
+            System.arraycopy(peeked, peekedPosition, b, off, count);
+            peekedPosition += count;
+            return count;
+        }
+        return inflate(b, off, len);
+    }
+
+    private int inflate(byte[] b, int off, int len) throws IOException {
+        if (endOfCurrentStream || finished) {
+            return -1;
+        }
+        try {
+            while (true) {
+                int count = inflater.inflate(b, off, len);
+                if (count > 0) {
+                    return count;
+                }
+                if (inflater.finished()) {
+                    // the peeked bytes are kept
+                    super.skipSubStream();
+                    return -1;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Compressed sub-stream is corrupted.");
+                }
+                if (inflater.needsInput() && !fillInflater()) {
+                    return -1;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed sub-stream is corrupted: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Passes the next unescaped data of the current sub-stream to the inflater.
+     *
+     * @return false if the sub-stream is empty
+     * @throws IOException if an I/O error occurs or the sub-stream ended unexpectedly
+     */
+    private boolean fillInflater() throws IOException {
+        int length = 0;
+        while (length == 0) {
+            int count = scanSubStream(input.length);
+            if (count == -1) {
+                if (!inputStarted) {
+                    return false;
+                }
+                throw new EOFException("Unexpected end of compressed sub-stream.");
+            }
+            try {
+                length = escaper.decode(buffer, position, count, input);
+
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Compressed sub-stream is corrupted: " + e.getMessage());
+            }
+            position += count;
+            inputStarted = true;
+        }
+        inflater.setInput(input, 0, length);
+        return true;
+    }
+
+    /**
+     * Reads the rest of the inflated current sub-stream into a new array of the exact size.
+     *
+     * @return the rest of the current sub-stream, empty if the sub-stream has already ended
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public byte[] readSubStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transferSubStreamTo(out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public int readSubStreamInto(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        byte[] chunk = new byte[Math.min(dst.remaining(), BUFFER_SIZE)];
+        int total = 0;
+        int count;
+        while (dst.hasRemaining() && (count = read(chunk, 0, Math.min(dst.remaining(), chunk.length))) != -1) {
+            dst.put(chunk, 0, count);
+            total += count;
+        }
+        return total == 0 && endOfCurrentStream ? -1 : total;
+    }
+
+    @Override
+    public long transferSubStreamTo(OutputStream out) throws IOException {
+        byte[] chunk = new byte[BUFFER_SIZE];
+        long total = 0;
+        int count;
+        while ((count = read(chunk, 0, chunk.length)) != -1) {
+            out.write(chunk, 0, count);
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public long transferSubStreamTo(WritableByteChannel out) throws IOException {
+        byte[] chunk = new byte[BUFFER_SIZE];
+        long total = 0;
+        int count;
+        while ((count = read(chunk, 0, chunk.length)) != -1) {
+            ByteBuffer src = ByteBuffer.wrap(chunk, 0, count);
+            while (src.hasRemaining()) {
+                out.write(src);
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    void appendSubStreamTo(SubStreamArena arena) throws IOException {
+        while (true) {
+            arena.ensureFree(BUFFER_SIZE);
+            int count = read(arena.array(), arena.size(), arena.array().length - arena.size());
+            if (count == -1) {
+                return;
+            }
+            arena.appended(count);
+        }
+    }
+
+    /**
+     * Returns false, mark and reset are not supported for compressed streams.
+     *
+     * @return false
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Does nothing, mark is not supported for compressed streams.
+     *
+     * @param readlimit ignored
+     */
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    /**
+     * Reset is not supported for compressed streams.
+     *
+     * @throws IOException always
+     */
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of the inflated current sub-stream without consuming them. The bytes are read again by the next read.
+     * <p>
+     * The peeked bytes are kept in a lookahead buffer, which grows if needed.
+     *
+     * @param b   the buffer into which the data is read
+     * @param off the start offset in array <code>b</code> at which the data is written
+     * @param len the maximum number of bytes to peek
+     * @return the total number of bytes peeked, less than <code>len</code> only if the sub-stream is shorter, or <code>-1</code> if the sub-stream has ended
+     * @throws IOException if an I/O error occurs or the compressed data is corrupted
+     */
+    @Override
+    public int peek(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (peekedLimit - peekedPosition < len) {
+            fillPeeked(len);
+        }
+        int count = Math.min(len, peekedLimit - peekedPosition);
+        System.arraycopy(peeked, peekedPosition, b, off, count);
+
+        return count == 0 ? -1 : count;
+    }
+
+    /**
+     * Inflates the current sub-stream into the lookahead buffer to contain at least the length of bytes, unless the sub-stream ends.
+     */
+    private void fillPeeked(int length) throws IOException {
+        if (peekedPosition > 0) {
+            System.arraycopy(peeked, peekedPosition, peeked, 0, peekedLimit - peekedPosition);
+            peekedLimit -= peekedPosition;
+            peekedPosition = 0;
+        }
+        if (length > peeked.length) {
+            byte[] bigger = new byte[Math.max(length, peeked.length * 2)];
+            System.arraycopy(peeked, 0, bigger, 0, peekedLimit);
+            peeked = bigger;
+        }
+        int count;
+        while (peekedLimit < length && (count = inflate(peeked, peekedLimit, peeked.length - peekedLimit)) != -1) {
+            peekedLimit += count;
+        }
+    }
+
+    @Override
+    long skipSubStream() throws IOException {
+        peekedPosition = 0;
+        peekedLimit = 0;
+        return super.skipSubStream();
+    }
+
+    @Override
+    public void reset(InputStream inputStream) {
+        super.reset(inputStream);
+        resetInflater();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+    }
+}
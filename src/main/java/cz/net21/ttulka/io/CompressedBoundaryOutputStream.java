@@ -0,0 +1,123 @@
+package cz.net21.ttulka.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Compressed boundary output stream class.
+ * <p>
+ * Each sub-stream is deflated independently, so it can be inflated on its own. The compressed data is escaped never to contain the boundary. The stream is
+ * read by <code>{@link CompressedBoundaryInputStream}</code>.
+ *
+ * @author ttulka
+ */
+public class CompressedBoundaryOutputStream extends BoundaryOutputStream {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Deflater deflater;
+    private final BoundaryEscaper escaper;
+
+    private final byte[] compressed = new byte[BUFFER_SIZE];
+    private final byte[] escaped = new byte[BUFFER_SIZE * 2];
+
+    private boolean written = false;
+
+    /**
+     * Creates the compressed boundary output stream based on a base output stream.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code> and the default compression level.
+     *
+     * @param outputStream the base output stream
+     */
+    public CompressedBoundaryOutputStream(OutputStream outputStream) {
+        this(outputStream, BoundaryStreamConsts.BOUNDARY);
+    }
+
+    /**
+     * Creates the compressed boundary output stream based on a base output stream with an explicit boundary.
+     * <p>
+     * Uses the default compression level.
+     *
+     * @param outputStream the base output stream
+     * @param boundary     the boundary
+     */
+    public CompressedBoundaryOutputStream(OutputStream outputStream, byte[] boundary) {
+        this(outputStream, boundary, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates the compressed boundary output stream based on a base output stream with an explicit boundary.
+     *
+     * @param outputStream the base output stream
+     * @param boundary     the boundary
+     * @param level        the compression level (0-9)
+     */
+    public CompressedBoundaryOutputStream(OutputStream outputStream, byte[] boundary, int level) {
+        super(outputStream, boundary);
+        this.deflater = new Deflater(level);
+        this.escaper = new BoundaryEscaper(boundary);
+    }
+
+    /**
+     * Finishes the compressed data of the current sub-stream and writes the boundary into the base stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void boundary() throws IOException {
+        finishSubStream();
+        super.boundary();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        written = true;
+
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            writeCompressed(deflater.deflate(compressed));
+        }
+    }
+
+    private void finishSubStream() throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+            writeCompressed(deflater.deflate(compressed));
+        }
+        deflater.reset();
+        written = false;
+    }
+
+    private void writeCompressed(int length) throws IOException {
+        if (length > 0) {
+            super.write(escaped, 0, escaper.encode(compressed, 0, length, escaped));
+        }
+    }
+
+    /**
+     * Finishes the last sub-stream, if not empty, and closes the stream and the base stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (written) {
+                finishSubStream();
+            }
+        } finally {
+            deflater.end();
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package cz.net21.ttulka.io;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe boundary writer for multiple producers.
+ * <p>
+ * Each producer appends a whole sub-stream atomically. Sub-streams are submitted through a lock-free queue; the producer holding the write lock writes all
+ * the pending sub-streams of all producers with their boundaries at once and flushes the base stream (group commit). A producer returns when its sub-stream
+ * has been written.
+ * <p>
+ * When writing into the base stream fails, the writer is broken: the pending and all the later sub-streams fail with the error and no more data is written,
+ * so the output is never misframed.
+ *
+ * @author ttulka
+ */
+public class ConcurrentBoundaryWriter implements Closeable {
+
+    /**
+     * Default maximal size of a batch in bytes.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1024 * 1024;
+
+    protected final OutputStream outputStream;
+    protected final byte[] boundary;
+
+    private final boolean sync;
+    private final int maxBatchSize;
+
+    private final Queue<Entry> submissions = new ConcurrentLinkedQueue<Entry>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private byte[] batch = new byte[BoundaryBufferPool.DEFAULT_BUFFER_SIZE];
+    private boolean closed = false;
+    private IOException failure;
+
+    /**
+     * Creates the concurrent boundary writer based on a base output stream.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code>.
+     *
+     * @param outputStream the base output stream
+     */
+    public ConcurrentBoundaryWriter(OutputStream outputStream) {
+        this(outputStream, BoundaryStreamConsts.BOUNDARY);
+    }
+
+    /**
+     * Creates the concurrent boundary writer based on a base output stream with an explicit boundary.
+     *
+     * @param outputStream the base output stream
+     * @param boundary     the boundary
+     */
+    public ConcurrentBoundaryWriter(OutputStream outputStream, byte[] boundary) {
+        this(outputStream, boundary, false, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Creates the concurrent boundary writer based on a base output stream with an explicit boundary.
+     *
+     * @param outputStream the base output stream
+     * @param boundary     the boundary
+     * @param sync         whether to force each batch to the storage device, if the base stream is a file output stream
+     * @param maxBatchSize the maximal size of a batch in bytes, a bigger sub-stream is written as a batch on its own
+     * @throws IllegalArgumentException when the max batch size is not positive
+     */
+    public ConcurrentBoundaryWriter(OutputStream outputStream, byte[] boundary, boolean sync, int maxBatchSize) {
+        super();
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Max batch size must be positive.");
+        }
+        this.outputStream = outputStream;
+        this.boundary = boundary.clone();
+        this.sync = sync;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Appends the sub-stream followed by the boundary. This method blocks until the sub-stream is written into the base stream.
+     *
+     * @param subStream the sub-stream
+     * @throws IOException if an I/O error occurs
+     */
+    public void append(byte[] subStream) throws IOException {
+        append(subStream, 0, subStream.length);
+    }
+
+    /**
+     * Appends the part of the array as a sub-stream followed by the boundary. This method blocks until the sub-stream is written into the base stream.
+     * <p>
+     * The array must not be modified until this method returns.
+     *
+     * @param b   the data
+     * @param off the start offset in the data
+     * @param len the number of bytes to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void append(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        Entry entry = new Entry(b, off, len);
+        submissions.add(entry);
+
+        writeLock.lock();
+        try {
+            // the sub-stream could have been written by another producer meanwhile, or it did not fit into a batch
+            while (!entry.done) {
+                writeBatch();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (entry.error != null) {
+            throw entry.error;
+        }
+    }
+
+    /**
+     * Writes pending sub-streams. Must be called under the write lock.
+     */
+    private void writeBatch() {
+        Entry first = submissions.poll();
+        Entry last = first;
+        int length = 0;
+
+        Entry entry = first;
+        while (entry != null) {
+            int needed = length + entry.len + boundary.length;
+            if (needed > batch.length) {
+                byte[] bigger = new byte[Math.max(needed, batch.length * 2)];
+                System.arraycopy(batch, 0, bigger, 0, length);
+                batch = bigger;
+            }
+            System.arraycopy(entry.b, entry.off, batch, length, entry.len);
+            System.arraycopy(boundary, 0, batch, length + entry.len, boundary.length);
+            length = needed;
+
+            if (last != entry) {
+                last.next = entry;
+                last = entry;
+            }
+            entry = length < maxBatchSize ? submissions.poll() : null;
+        }
+
+        IOException error = failure;
+        if (error == null && closed) {
+            error = new IOException("Writer closed.");
+        }
+        if (error == null) {
+            try {
+                outputStream.write(batch, 0, length);
+                outputStream.flush();
+
+                if (sync && outputStream instanceof FileOutputStream) {
+                    ((FileOutputStream) outputStream).getFD().sync();
+                }
+            } catch (IOException e) {
+                // a partially written batch would misframe all the following data
+                error = e;
+                failure = e;
+            }
+        }
+
+        if (batch.length > maxBatchSize) {
+            batch = new byte[BoundaryBufferPool.DEFAULT_BUFFER_SIZE];
+        }
+
+        for (entry = first; entry != null; entry = entry.next) {
+            entry.error = error;
+            entry.done = true;
+        }
+    }
+
+    /**
+     * Writes all the submitted sub-streams and closes the writer and the base stream.
+     *
+     * @throws IOException if an I/O error occurs or writing has failed before
+     */
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            try {
+                while (!submissions.isEmpty()) {
+                    writeBatch();
+                }
+            } finally {
+                closed = true;
+                outputStream.close();
+            }
+            if (failure != null) {
+                throw new IOException("Writing failed.", failure);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static class Entry {
+
+        final byte[] b;
+        final int off;
+        final int len;
+
+        Entry next;
+        volatile boolean done = false;
+        IOException error;
+
+        Entry(byte[] b, int off, int len) {
+            this.b = b;
+            this.off = off;
+            this.len = len;
+        }
+    }
+}
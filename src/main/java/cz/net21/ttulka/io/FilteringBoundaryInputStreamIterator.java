@@ -0,0 +1,63 @@
+package cz.net21.ttulka.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the sub-streams of the boundary input stream accepted by a filter.
+ *
+ * @author ttulka
+ */
+class FilteringBoundaryInputStreamIterator implements Iterator<InputStream> {
+
+    protected final BoundaryInputStream boundaryInputStream;
+
+    private final int headerLength;
+    private final SubStreamFilter filter;
+
+    private boolean positioned = false;
+
+    /**
+     * Creates the filtering iterator based on a boundary input stream.
+     *
+     * @param boundaryInputStream the boundary input stream
+     * @param headerLength        the count of first bytes of a sub-stream passed to the filter
+     * @param filter              the filter
+     */
+    public FilteringBoundaryInputStreamIterator(BoundaryInputStream boundaryInputStream, int headerLength, SubStreamFilter filter) {
+        super();
+        this.boundaryInputStream = boundaryInputStream;
+        this.headerLength = headerLength;
+        this.filter = filter;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!positioned) {
+            try {
+                positioned = boundaryInputStream.nextAccepted(headerLength, filter);
+
+            } catch (IOException e) {
+                boundaryInputStream.endOfCurrentStream = true;
+                boundaryInputStream.finished = true;
+            }
+        }
+        return positioned;
+    }
+
+    @Override
+    public InputStream next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("Stream already finished.");
+        }
+        positioned = false;
+        return boundaryInputStream;
+    }
+
+    @Override
+    public void remove() {
+        throw new IllegalStateException("Cannot remove from a stream.");
+    }
+}
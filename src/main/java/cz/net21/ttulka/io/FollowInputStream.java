@@ -0,0 +1,136 @@
+package cz.net21.ttulka.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Follow input stream decorator class.
+ * <p>
+ * Reaching EOF of the base stream means "wait for more data" instead of "finished", so a growing file can be followed like with <code>tail -f</code>. The
+ * base stream is polled until new data is appended or the stream is closed.
+ * <p>
+ * Use it as the base stream of a boundary input stream to process each sub-stream as soon as its boundary is written:
+ * <pre>
+ * new BoundaryInputStream(new FollowInputStream(new FileInputStream(file)));
+ * </pre>
+ * The boundary input stream keeps its unmatched lookahead while waiting, so the data is never re-read. As EOF never comes, a sub-stream ends only with its
+ * boundary. Closing the stream (from any thread) makes a waiting read throw an exception, so an unfinished sub-stream is never reported as complete.
+ *
+ * @author ttulka
+ */
+public class FollowInputStream extends InputStream {
+
+    /**
+     * Default poll interval in milliseconds.
+     */
+    public static final long DEFAULT_POLL_INTERVAL = 100;
+
+    protected final InputStream inputStream;
+
+    private final long pollInterval;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates the follow input stream based on a base input stream.
+     * <p>
+     * Uses the default poll interval.
+     *
+     * @param inputStream the base input stream
+     */
+    public FollowInputStream(InputStream inputStream) {
+        this(inputStream, DEFAULT_POLL_INTERVAL);
+    }
+
+    /**
+     * Creates the follow input stream based on a base input stream.
+     *
+     * @param inputStream  the base input stream
+     * @param pollInterval the poll interval in milliseconds
+     * @throws IllegalArgumentException when the poll interval is not positive
+     */
+    public FollowInputStream(InputStream inputStream, long pollInterval) {
+        super();
+        if (pollInterval <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive.");
+        }
+        this.inputStream = inputStream;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Reads the next byte of data from the base stream. This method blocks until input data is available or the stream is closed.
+     *
+     * @return the next byte of data
+     * @throws IOException if an I/O error occurs or the stream has been closed
+     */
+    @Override
+    public int read() throws IOException {
+        int b;
+        while ((b = readOpen()) == -1) {
+            await();
+        }
+        return b;
+    }
+
+    private int readOpen() throws IOException {
+        checkClosed();
+        return inputStream.read();
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of data from the base stream. This method blocks until input data is available or the stream is closed.
+     *
+     * @param b   the buffer into which the data is read
+     * @param off the start offset in array <code>b</code> at which the data is written
+     * @param len the maximum number of bytes to read
+     * @return the total number of bytes read into the buffer
+     * @throws IOException if an I/O error occurs or the stream has been closed
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int read;
+        while ((read = readOpen(b, off, len)) == -1) {
+            await();
+        }
+        return read;
+    }
+
+    private int readOpen(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        return inputStream.read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+        checkClosed();
+        return inputStream.available();
+    }
+
+    private void await() throws IOException {
+        try {
+            Thread.sleep(pollInterval);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data.");
+        }
+    }
+
+    private void checkClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        super.close();
+        inputStream.close();
+    }
+}
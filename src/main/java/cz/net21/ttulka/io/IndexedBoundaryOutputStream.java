@@ -0,0 +1,108 @@
+package cz.net21.ttulka.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Indexed boundary output stream class.
+ * <p>
+ * Keeps track of the offsets of sub-streams and writes a keyed <code>{@link BoundaryIndex}</code> alongside the boundary stream when closed.
+ *
+ * @author ttulka
+ */
+public class IndexedBoundaryOutputStream extends BoundaryOutputStream {
+
+    private final File indexFile;
+
+    private long offset = 0;
+    private long subStreamOffset = 0;
+    private long subStreamIndex = 0;
+
+    private long[] keys = new long[16];
+    private long[] offsets = new long[16];
+    private long[] indexes = new long[16];
+    private int count = 0;
+
+    /**
+     * Creates the indexed boundary output stream based on a base output stream.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code>.
+     *
+     * @param outputStream the base output stream, the offsets are counted from its current position
+     * @param indexFile    the index file to be written on closing
+     */
+    public IndexedBoundaryOutputStream(OutputStream outputStream, File indexFile) {
+        this(outputStream, BoundaryStreamConsts.BOUNDARY, indexFile);
+    }
+
+    /**
+     * Creates the indexed boundary output stream based on a base output stream with an explicit boundary.
+     *
+     * @param outputStream the base output stream, the offsets are counted from its current position
+     * @param boundary     the boundary
+     * @param indexFile    the index file to be written on closing
+     */
+    public IndexedBoundaryOutputStream(OutputStream outputStream, byte[] boundary, File indexFile) {
+        super(outputStream, boundary);
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Sets the key of the current sub-stream. Can be called anytime before the boundary of the sub-stream is written.
+     * <p>
+     * A later sub-stream with the same key replaces the earlier one in the index.
+     *
+     * @param key the key
+     */
+    public void key(long key) {
+        if (count == keys.length) {
+            keys = grow(keys);
+            offsets = grow(offsets);
+            indexes = grow(indexes);
+        }
+        keys[count] = key;
+        offsets[count] = subStreamOffset;
+        indexes[count] = subStreamIndex;
+        count++;
+    }
+
+    private static long[] grow(long[] array) {
+        long[] bigger = new long[array.length * 2];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+
+    @Override
+    public void boundary() throws IOException {
+        super.boundary();
+
+        offset += boundary.length;
+        subStreamOffset = offset;
+        subStreamIndex++;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        super.write(b);
+        offset++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        offset += len;
+    }
+
+    /**
+     * Closes the stream and the base stream and writes the index file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+
+        BoundaryIndex.write(indexFile, keys, offsets, indexes, count);
+    }
+}
@@ -0,0 +1,473 @@
+package cz.net21.ttulka.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Nested boundary input stream decorator class.
+ * <p>
+ * Reads hierarchical sub-streams separated by an ordered list of boundaries (level <code>0</code> is the outermost, e.g. a group of records, the last level
+ * is the innermost, e.g. a record) in one scan. The result is the same as nesting boundary input streams into each other, but every byte is scanned only
+ * once.
+ * <p>
+ * The stream itself reads the current innermost sub-stream (record), the outer sub-streams are navigated via {@link #next(int)}.
+ *
+ * @author ttulka
+ */
+public class NestedBoundaryInputStream extends BoundaryInputStream {
+
+    private static final int STARTED = 1;
+    private static final int ENDED = 2;
+    private static final int FINISHED = 4;
+
+    protected final byte[][] boundaries;
+
+    private final boolean[] started;
+    private final boolean[] ended;
+    private final boolean[] finished;
+
+    private final boolean[] markedStarted;
+    private final boolean[] markedEnded;
+    private final boolean[] markedFinished;
+
+    /**
+     * Creates the nested boundary input stream based on a base input stream with explicit boundaries.
+     *
+     * @param inputStream the base input stream
+     * @param boundaries  the boundaries ordered from the outermost level
+     * @throws IllegalArgumentException when no boundaries are given or when a boundary is a substring of another one
+     */
+    public NestedBoundaryInputStream(InputStream inputStream, byte[][] boundaries) {
+        this(inputStream, boundaries, null);
+    }
+
+    /**
+     * Creates the nested boundary input stream based on a base input stream with explicit boundaries.
+     * <p>
+     * The block buffer is acquired from the pool and released back when the stream is closed.
+     *
+     * @param inputStream the base input stream
+     * @param boundaries  the boundaries ordered from the outermost level
+     * @param bufferPool  the buffer pool
+     * @throws IllegalArgumentException when no boundaries are given, when a boundary is a substring of another one, or when the buffers of the pool are
+     *                                  shorter than the boundaries
+     */
+    public NestedBoundaryInputStream(InputStream inputStream, byte[][] boundaries, BoundaryBufferPool bufferPool) {
+        super(inputStream, innermost(boundaries), maxLength(boundaries), bufferPool);
+        this.boundaries = new byte[boundaries.length][];
+        for (int i = 0; i < boundaries.length; i++) {
+            this.boundaries[i] = boundaries[i].clone();
+        }
+        this.started = new boolean[boundaries.length];
+        this.ended = new boolean[boundaries.length];
+        this.finished = new boolean[boundaries.length];
+        this.markedStarted = new boolean[boundaries.length];
+        this.markedEnded = new boolean[boundaries.length];
+        this.markedFinished = new boolean[boundaries.length];
+
+        for (int i = 0; i < boundaries.length; i++) {
+            for (int j = i + 1; j < boundaries.length; j++) {
+                if (BoundaryStreamUtils.contains(boundaries[i], boundaries[j]) || BoundaryStreamUtils.contains(boundaries[j], boundaries[i])) {
+                    throw new IllegalArgumentException("The boundaries cannot be substrings of each other.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the nested boundary input stream on the file channel at the checkpoint. The channel is positioned at the offset of the checkpoint, so the source is
+     * not read from the beginning.
+     *
+     * @param channel    the file channel
+     * @param boundaries the boundaries ordered from the outermost level
+     * @param checkpoint the checkpoint of a nested stream with the same boundaries
+     * @return the nested boundary input stream
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException when the checkpoint does not belong to a nested stream of the same count of levels
+     */
+    public static NestedBoundaryInputStream open(FileChannel channel, byte[][] boundaries, BoundaryCheckpoint checkpoint) throws IOException {
+        channel.position(checkpoint.getOffset());
+
+        NestedBoundaryInputStream nbis = new NestedBoundaryInputStream(Channels.newInputStream(channel), boundaries);
+        nbis.restore(checkpoint);
+        return nbis;
+    }
+
+    private static byte[] innermost(byte[][] boundaries) {
+        if (boundaries.length == 0) {
+            throw new IllegalArgumentException("At least one boundary must be set.");
+        }
+        return boundaries[boundaries.length - 1];
+    }
+
+    private static int maxLength(byte[][] boundaries) {
+        int max = 0;
+        for (byte[] boundary : boundaries) {
+            max = Math.max(max, boundary.length);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the count of levels.
+     *
+     * @return the count of levels
+     */
+    public int getLevels() {
+        return boundaries.length;
+    }
+
+    /**
+     * Returns true if there is a next sub-stream on the level within the current sub-stream of the upper level.
+     *
+     * @param level the level
+     * @return true if there is a next sub-stream, otherwise false
+     */
+    public boolean hasNext(int level) {
+        return !isFinished(level);
+    }
+
+    /**
+     * Moves to the next sub-stream on the level. The rest of the current sub-stream on the level is skipped, all the lower levels start from the beginning.
+     *
+     * @param level the level
+     * @throws NoSuchElementException when no more sub-streams on the level
+     */
+    public void next(int level) {
+        if (isFinished(level)) {
+            throw new NoSuchElementException("Stream already finished.");
+        }
+        markPosition = -1;
+
+        if (isStarted(level) && !isEnded(level)) {
+            try {
+                consumeCurrentStream(level);
+
+            } catch (IOException e) {
+                endAll();
+            }
+        }
+        for (int l = 0; l < level; l++) {
+            setStarted(l);
+        }
+        setStarted(level);
+        setEnded(level, false);
+        if (isLast(level)) {
+            subStreamIndex++;
+        }
+
+        for (int l = level + 1; l < boundaries.length; l++) {
+            if (l == boundaries.length - 1) {
+                super.started = false;
+                super.endOfCurrentStream = false;
+                super.finished = false;
+            } else {
+                started[l] = false;
+                ended[l] = false;
+                finished[l] = false;
+            }
+        }
+    }
+
+    /**
+     * Returns true if there is a next group (a sub-stream on the outermost level).
+     *
+     * @return true if there is a next group, otherwise false
+     */
+    public boolean hasNextGroup() {
+        return hasNext(0);
+    }
+
+    /**
+     * Moves to the next group (a sub-stream on the outermost level).
+     *
+     * @throws NoSuchElementException when no more groups
+     */
+    public void nextGroup() {
+        next(0);
+    }
+
+    /**
+     * Returns true if there is a next record (a sub-stream on the innermost level) in the current group.
+     *
+     * @return true if there is a next record, otherwise false
+     */
+    public boolean hasNextRecord() {
+        return hasNext(boundaries.length - 1);
+    }
+
+    /**
+     * Moves to the next record (a sub-stream on the innermost level) in the current group.
+     *
+     * @throws NoSuchElementException when no more records in the current group
+     */
+    public void nextRecord() {
+        next(boundaries.length - 1);
+    }
+
+    /**
+     * Returns true if the current group has no more records.
+     *
+     * @return true if the records of the current group finished, otherwise false
+     */
+    @Override
+    public boolean hasFinished() {
+        return !hasNextRecord();
+    }
+
+    /**
+     * Moves to the next record in the current group. This method must be called always when a current record reaches <code>-1</code>.
+     *
+     * @throws NoSuchElementException when no more records in the current group
+     */
+    @Override
+    public void next() {
+        nextRecord();
+    }
+
+    /**
+     * Reads the next byte of data of the current record. The value byte is returned as an <code>int</code> in the range <code>0</code> to <code>255</code>. If
+     * no byte is available because a boundary of any level has been reached, or no byte is available because the end of the base stream has been reached,
+     * the value <code>-1</code> is returned. This method blocks until input data is available, the end of the stream is detected, or an exception is thrown.
+     *
+     * @return the next byte of data, or <code>-1</code> if the current record ended
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public int read() throws IOException {
+        return super.read();
+    }
+
+    @Override
+    boolean consumeBoundary() throws IOException {
+        int level = boundaryLevelAt(position, boundaries.length - 1);
+        if (level == -1) {
+            return false;
+        }
+        consumeBoundary(level);
+        return true;
+    }
+
+    @Override
+    boolean isBoundaryAt(int index) {
+        return boundaryLevelAt(index, boundaries.length - 1) != -1;
+    }
+
+    /**
+     * Consumes the boundary of the level at the current position. The sub-streams of the level and all the lower levels end.
+     */
+    private void consumeBoundary(int level) throws IOException {
+        position += boundaries[level].length;
+
+        for (int l = level; l < boundaries.length; l++) {
+            setEnded(l, true);
+            if (l > level) {
+                setFinished(l);
+            }
+        }
+
+        fillBuffer(lookahead);
+
+        if (position == limit) {
+            endAll();
+            return;
+        }
+        // is the upper level ending too?
+        int upper = boundaryLevelAt(position, level - 1);
+        if (upper != -1) {
+            setFinished(level);
+            consumeBoundary(upper);
+        }
+    }
+
+    /**
+     * Skips the rest of the current sub-stream on the level.
+     */
+    private void consumeCurrentStream(int level) throws IOException {
+        while (!isEnded(level) && !isFinished(level)) {
+            fillBuffer(lookahead);
+
+            int boundaryLevel = boundaryLevelAt(position, level);
+            if (boundaryLevel != -1) {
+                consumeBoundary(boundaryLevel);
+
+            } else if (position == limit) {
+                endAll();
+
+            } else {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Returns the outermost level of a boundary starting at the index, or <code>-1</code> if there is no boundary up to the max level.
+     */
+    private int boundaryLevelAt(int index, int maxLevel) {
+        for (int l = 0; l <= maxLevel; l++) {
+            if (BoundaryStreamUtils.startsWith(buffer, limit, index, boundaries[l])) {
+                return l;
+            }
+        }
+        return -1;
+    }
+
+    private void endAll() {
+        for (int l = 0; l < boundaries.length; l++) {
+            setEnded(l, true);
+            setFinished(l);
+        }
+    }
+
+    private boolean isLast(int level) {
+        return level == boundaries.length - 1;
+    }
+
+    private boolean isStarted(int level) {
+        return isLast(level) ? super.started : started[level];
+    }
+
+    private void setStarted(int level) {
+        if (isLast(level)) {
+            super.started = true;
+        } else {
+            started[level] = true;
+        }
+    }
+
+    private boolean isEnded(int level) {
+        return isLast(level) ? super.endOfCurrentStream : ended[level];
+    }
+
+    private void setEnded(int level, boolean value) {
+        if (isLast(level)) {
+            super.endOfCurrentStream = value;
+        } else {
+            ended[level] = value;
+        }
+    }
+
+    private boolean isFinished(int level) {
+        if (isLast(level)) {
+            return super.finished;
+        }
+        // the base stream reached EOF
+        return finished[level] || (endOfBaseStream && position == limit && super.finished);
+    }
+
+    private void setFinished(int level) {
+        if (isLast(level)) {
+            super.finished = true;
+        } else {
+            finished[level] = true;
+        }
+    }
+
+    /**
+     * Returns the checkpoint of the current position in the base stream including the state of all the levels.
+     *
+     * @return the checkpoint
+     * @see #open(FileChannel, byte[][], BoundaryCheckpoint)
+     */
+    @Override
+    public BoundaryCheckpoint getCheckpoint() {
+        BoundaryCheckpoint checkpoint = super.getCheckpoint();
+
+        byte[] levels = new byte[boundaries.length];
+        for (int l = 0; l < boundaries.length; l++) {
+            levels[l] = (byte) ((isStarted(l) ? STARTED : 0) | (isEnded(l) ? ENDED : 0) | (isFinished(l) ? FINISHED : 0));
+        }
+        return new BoundaryCheckpoint(checkpoint.getSubStreamIndex(), checkpoint.getOffset(), checkpoint.isEndOfSubStream(), checkpoint.isFinished(),
+                                      levels);
+    }
+
+    /**
+     * Restores the state of all the levels from the checkpoint.
+     *
+     * @param checkpoint the checkpoint
+     * @throws IllegalArgumentException when the checkpoint does not belong to a nested stream of the same count of levels
+     */
+    @Override
+    void restore(BoundaryCheckpoint checkpoint) {
+        byte[] levels = checkpoint.getLevels();
+        if (levels == null || levels.length != boundaries.length) {
+            throw new IllegalArgumentException("Checkpoint does not belong to a nested stream of " + boundaries.length + " levels.");
+        }
+        super.restore(checkpoint);
+
+        for (int l = 0; l < boundaries.length; l++) {
+            if (isLast(l)) {
+                super.started = (levels[l] & STARTED) != 0;
+                super.endOfCurrentStream = (levels[l] & ENDED) != 0;
+                super.finished = (levels[l] & FINISHED) != 0;
+            } else {
+                started[l] = (levels[l] & STARTED) != 0;
+                ended[l] = (levels[l] & ENDED) != 0;
+                finished[l] = (levels[l] & FINISHED) != 0;
+            }
+        }
+    }
+
+    /**
+     * Claims the next record of the current group and reads it completely into the arena. The records of a group can be consumed by multiple threads, the
+     * groups are navigated by <code>{@link #nextGroup()}</code> when all the consumers have finished.
+     *
+     * @param arena the arena of the consumer
+     * @return the index of the claimed record counted over all the groups, or <code>-1</code> if the current group has no more records
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public synchronized long claimNext(SubStreamArena arena) throws IOException {
+        return super.claimNext(arena);
+    }
+
+    /**
+     * Marks the current position in the current record. The state of all the levels is marked as well, so reading over a boundary of any level is reverted
+     * by <code>{@link #reset()}</code>.
+     * <p>
+     * The mark is invalidated by moving to the next sub-stream on any level.
+     *
+     * @param readlimit the maximum limit of bytes that can be read before the mark position becomes invalid
+     */
+    @Override
+    public void mark(int readlimit) {
+        super.mark(readlimit);
+
+        System.arraycopy(started, 0, markedStarted, 0, started.length);
+        System.arraycopy(ended, 0, markedEnded, 0, ended.length);
+        System.arraycopy(finished, 0, markedFinished, 0, finished.length);
+    }
+
+    /**
+     * Repositions the stream to the marked position in the current record and restores the state of all the levels.
+     *
+     * @throws IOException if the stream has not been marked in the current record or the mark has been invalidated
+     */
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+
+        System.arraycopy(markedStarted, 0, started, 0, started.length);
+        System.arraycopy(markedEnded, 0, ended, 0, ended.length);
+        System.arraycopy(markedFinished, 0, finished, 0, finished.length);
+    }
+
+    @Override
+    public void reset(InputStream inputStream) {
+        super.reset(inputStream);
+
+        Arrays.fill(started, false);
+        Arrays.fill(ended, false);
+        Arrays.fill(finished, false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        endAll();
+    }
+}
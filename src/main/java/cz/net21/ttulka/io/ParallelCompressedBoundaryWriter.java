@@ -0,0 +1,246 @@
+package cz.net21.ttulka.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Writer compressing sub-streams in parallel.
+ * <p>
+ * Each appended sub-stream is deflated on a pool of worker threads and written to the base stream with its boundary strictly in the order of appending. At
+ * most the window of sub-streams is in progress at once; appending blocks until the oldest one is written. The stream is read by
+ * <code>{@link CompressedBoundaryInputStream}</code>.
+ * <p>
+ * The writer is not thread-safe, sub-streams are expected to be appended by a single producer.
+ * <p>
+ * When compressing or writing into the base stream fails, the writer is broken: all the later sub-streams fail with the error and no more data is written,
+ * so the output is never misframed and no sub-stream is silently missing.
+ *
+ * @author ttulka
+ */
+public class ParallelCompressedBoundaryWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    protected final OutputStream outputStream;
+    protected final byte[] boundary;
+
+    private final int window;
+    private final BoundaryEscaper escaper;
+    private final BlockingQueue<Deflater> deflaters;
+    private final ExecutorService executor;
+
+    private final Queue<Future<byte[]>> inProgress = new LinkedList<Future<byte[]>>();
+    private boolean closed = false;
+    private IOException failure;
+
+    /**
+     * Creates the writer based on a base output stream.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code>, a thread per processor and the default compression level.
+     *
+     * @param outputStream the base output stream
+     */
+    public ParallelCompressedBoundaryWriter(OutputStream outputStream) {
+        this(outputStream, BoundaryStreamConsts.BOUNDARY, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the writer based on a base output stream with an explicit boundary.
+     * <p>
+     * Uses the window of four sub-streams per thread and the default compression level.
+     *
+     * @param outputStream the base output stream
+     * @param boundary     the boundary
+     * @param threads      the count of worker threads
+     */
+    public ParallelCompressedBoundaryWriter(OutputStream outputStream, byte[] boundary, int threads) {
+        this(outputStream, boundary, threads, threads * 4, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates the writer based on a base output stream with an explicit boundary.
+     *
+     * @param outputStream the base output stream
+     * @param boundary     the boundary
+     * @param threads      the count of worker threads
+     * @param window       the max count of sub-streams in progress
+     * @param level        the compression level (0-9)
+     * @throws IllegalArgumentException when the count of threads or the window is not positive
+     */
+    public ParallelCompressedBoundaryWriter(OutputStream outputStream, byte[] boundary, int threads, int window, int level) {
+        super();
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Count of threads must be positive.");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be positive.");
+        }
+        this.outputStream = outputStream;
+        this.boundary = boundary.clone();
+        this.window = window;
+        this.escaper = new BoundaryEscaper(boundary);
+
+        this.deflaters = new ArrayBlockingQueue<Deflater>(threads);
+        for (int i = 0; i < threads; i++) {
+            deflaters.add(new Deflater(level));
+        }
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Appends the sub-stream. This method blocks only when the window is full.
+     * <p>
+     * The array must not be modified until the sub-stream is written, at the latest when the writer is closed.
+     *
+     * @param subStream the sub-stream
+     * @throws IOException if an I/O error occurs or writing has failed before
+     */
+    public void append(byte[] subStream) throws IOException {
+        append(subStream, 0, subStream.length);
+    }
+
+    /**
+     * Appends the part of the array as a sub-stream. This method blocks only when the window is full.
+     * <p>
+     * The array must not be modified until the sub-stream is written, at the latest when the writer is closed.
+     *
+     * @param b   the data
+     * @param off the start offset in the data
+     * @param len the number of bytes to write
+     * @throws IOException if an I/O error occurs or writing has failed before
+     */
+    public void append(final byte[] b, final int off, final int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (closed) {
+            throw new IOException("Writer closed.");
+        }
+        if (failure != null) {
+            throw new IOException("Writing failed.", failure);
+        }
+        while (inProgress.size() >= window) {
+            writeOldest();
+        }
+        inProgress.add(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws InterruptedException {
+                return compress(b, off, len);
+            }
+        }));
+    }
+
+    /**
+     * Deflates and escapes the data with a deflater of the pool.
+     */
+    private byte[] compress(byte[] b, int off, int len) throws InterruptedException {
+        Deflater deflater = deflaters.take();
+        try {
+            byte[] compressed = new byte[BUFFER_SIZE];
+            byte[] escaped = new byte[BUFFER_SIZE * 2];
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, len / 2));
+
+            deflater.setInput(b, off, len);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int length = deflater.deflate(compressed);
+                out.write(escaped, 0, escaper.encode(compressed, 0, length, escaped));
+            }
+            return out.toByteArray();
+
+        } finally {
+            deflater.reset();
+            deflaters.add(deflater);
+        }
+    }
+
+    /**
+     * Writes the oldest sub-stream in progress when compressed.
+     */
+    private void writeOldest() throws IOException {
+        if (failure != null) {
+            throw new IOException("Writing failed.", failure);
+        }
+        byte[] compressed;
+        try {
+            // an interrupted wait keeps the sub-stream in progress
+            compressed = inProgress.peek().get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing.");
+
+        } catch (ExecutionException e) {
+            failure = new IOException("Compressing failed.", e.getCause());
+            throw failure;
+        }
+        inProgress.remove();
+        try {
+            outputStream.write(compressed);
+            outputStream.write(boundary);
+
+        } catch (IOException e) {
+            // a partially written sub-stream would misframe all the following data
+            failure = e;
+            throw e;
+        }
+    }
+
+    /**
+     * Writes all the appended sub-streams and closes the writer and the base stream.
+     *
+     * @throws IOException if an I/O error occurs or writing has failed before
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            while (failure == null && !inProgress.isEmpty()) {
+                writeOldest();
+            }
+        } finally {
+            executor.shutdownNow();
+            try {
+                // a deflater must not be ended while a worker is using it
+                awaitTermination();
+
+            } finally {
+                for (Deflater deflater : deflaters) {
+                    deflater.end();
+                }
+                outputStream.close();
+            }
+        }
+        if (failure != null) {
+            throw new IOException("Writing failed.", failure);
+        }
+    }
+
+    private void awaitTermination() throws IOException {
+        try {
+            // deflating is not interruptible, the workers finish their current sub-streams
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing.");
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package cz.net21.ttulka.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Read-ahead input stream decorator class.
+ * <p>
+ * A helper thread fills a bounded ring of blocks from the base stream while the consumer works on the previous blocks, so I/O latency of a slow base stream
+ * overlaps with parsing. Exceptions thrown by the base stream are rethrown to the consumer in order.
+ * <p>
+ * Use it as the base stream of a boundary input stream:
+ * <pre>
+ * new BoundaryInputStream(new ReadAheadInputStream(socketInputStream));
+ * </pre>
+ *
+ * @author ttulka
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    /**
+     * Default count of blocks in the ring.
+     */
+    public static final int DEFAULT_BLOCK_COUNT = 4;
+
+    protected final InputStream inputStream;
+
+    private final BlockingQueue<Block> freeBlocks;
+    private final BlockingQueue<Block> filledBlocks;
+
+    private Thread readerThread;
+    private Block current;
+    private int position = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates the read-ahead input stream based on a base input stream.
+     * <p>
+     * Uses the default block size and count.
+     *
+     * @param inputStream the base input stream
+     */
+    public ReadAheadInputStream(InputStream inputStream) {
+        this(inputStream, BoundaryBufferPool.DEFAULT_BUFFER_SIZE, DEFAULT_BLOCK_COUNT);
+    }
+
+    /**
+     * Creates the read-ahead input stream based on a base input stream.
+     *
+     * @param inputStream the base input stream
+     * @param blockSize   the size of a block
+     * @param blockCount  the count of blocks in the ring
+     * @throws IllegalArgumentException when the block size or the block count is not positive
+     */
+    public ReadAheadInputStream(InputStream inputStream, int blockSize, int blockCount) {
+        super();
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive.");
+        }
+        if (blockCount <= 0) {
+            throw new IllegalArgumentException("Block count must be positive.");
+        }
+        this.inputStream = inputStream;
+        this.freeBlocks = new ArrayBlockingQueue<Block>(blockCount);
+        this.filledBlocks = new ArrayBlockingQueue<Block>(blockCount);
+
+        for (int i = 0; i < blockCount; i++) {
+            freeBlocks.add(new Block(blockSize));
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return current.data[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, count);
+        position += count;
+
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (current == null || current.length == -1) {
+            return 0;
+        }
+        return current.length - position;
+    }
+
+    /**
+     * Makes sure the current block has unread data.
+     *
+     * @return true if data is available, false if the base stream has reached EOF
+     * @throws IOException if an I/O error occurs in the base stream
+     */
+    private boolean nextBlock() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        while (current == null || position == current.length) {
+            if (current != null) {
+                freeBlocks.add(current);
+            }
+            if (readerThread == null) {
+                startReaderThread();
+            }
+            try {
+                current = filledBlocks.take();
+                position = 0;
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                current = null;
+                throw new InterruptedIOException("Interrupted while waiting for data.");
+            }
+        }
+        if (current.error != null) {
+            rethrow(current.error);
+        }
+        return current.length != -1;
+    }
+
+    private void rethrow(Throwable error) throws IOException {
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        throw new IOException(error.getMessage());
+    }
+
+    private void startReaderThread() {
+        readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readAhead();
+            }
+        }, "boundary-read-ahead");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Fills free blocks from the base stream until EOF, an error or closing.
+     */
+    private void readAhead() {
+        try {
+            Block block;
+            do {
+                block = freeBlocks.take();
+                try {
+                    block.length = inputStream.read(block.data, 0, block.data.length);
+
+                } catch (Throwable t) {
+                    block.length = -1;
+                    block.error = t;
+                }
+                filledBlocks.put(block);
+
+            } while (block.length != -1 && !closed);
+
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+
+        if (readerThread != null) {
+            readerThread.interrupt();
+        }
+        super.close();
+        inputStream.close();
+    }
+
+    private static class Block {
+
+        final byte[] data;
+        int length = 0;
+        Throwable error;
+
+        Block(int size) {
+            this.data = new byte[size];
+        }
+    }
+}
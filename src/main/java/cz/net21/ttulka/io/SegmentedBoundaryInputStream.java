@@ -0,0 +1,161 @@
+package cz.net21.ttulka.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Segmented boundary input stream class.
+ * <p>
+ * Reads segments written by <code>{@link SegmentedBoundaryOutputStream}</code> one after another as a single boundary stream. A segment file is opened
+ * only when the previous one is read through.
+ * <p>
+ * As every segment ends at a sub-stream boundary, each segment can be read by its own <code>{@link BoundaryInputStream}</code> as well, e.g. to process
+ * the segments concurrently:
+ * <pre>
+ * for (File segment : SegmentedBoundaryInputStream.listSegments(directory)) {
+ *     executor.submit(... new BoundaryInputStream(new FileInputStream(segment)) ...);
+ * }
+ * </pre>
+ *
+ * @author ttulka
+ */
+public class SegmentedBoundaryInputStream extends BoundaryInputStream {
+
+    /**
+     * Creates the segmented boundary input stream based on segment files in a directory.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code> and the default segment file names.
+     *
+     * @param directory the directory of segments
+     * @throws FileNotFoundException if a segment file cannot be read
+     */
+    public SegmentedBoundaryInputStream(File directory) throws FileNotFoundException {
+        this(listSegments(directory, SegmentedBoundaryOutputStream.DEFAULT_NAME_PATTERN), BoundaryStreamConsts.BOUNDARY);
+    }
+
+    /**
+     * Creates the segmented boundary input stream based on segment files.
+     *
+     * @param segments the segment files in order
+     * @param boundary the boundary
+     * @throws FileNotFoundException if a segment file cannot be read
+     */
+    public SegmentedBoundaryInputStream(List<File> segments, byte[] boundary) throws FileNotFoundException {
+        super(new SegmentsInputStream(checkSegments(segments)), boundary);
+    }
+
+    private static List<File> checkSegments(List<File> segments) throws FileNotFoundException {
+        for (File segment : segments) {
+            if (!segment.isFile() || !segment.canRead()) {
+                throw new FileNotFoundException("Cannot read the segment: " + segment);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Lists the segment files in a directory with the default segment file names.
+     *
+     * @param directory the directory of segments
+     * @return the segment files in order
+     */
+    public static List<File> listSegments(File directory) {
+        return listSegments(directory, SegmentedBoundaryOutputStream.DEFAULT_NAME_PATTERN);
+    }
+
+    /**
+     * Lists the segment files in a directory. Segments are looked up by their index until the first missing one.
+     *
+     * @param directory   the directory of segments
+     * @param namePattern the pattern of segment file names, formatted with the index of the segment
+     * @return the segment files in order
+     */
+    public static List<File> listSegments(File directory, String namePattern) {
+        List<File> segments = new ArrayList<File>();
+
+        File segment;
+        while ((segment = new File(directory, String.format(namePattern, segments.size()))).isFile()) {
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    /**
+     * Reads the segments one after another. A segment is opened lazily, a segment deleted meanwhile is reported as <code>{@link FileNotFoundException}</code>
+     * by the read.
+     */
+    private static class SegmentsInputStream extends InputStream {
+
+        private final List<File> segments;
+        private int index = 0;
+        private InputStream current;
+
+        SegmentsInputStream(List<File> segments) {
+            this.segments = new ArrayList<File>(segments);
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (nextSegment()) {
+                int b = current.read();
+                if (b != -1) {
+                    return b;
+                }
+                closeSegment();
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (nextSegment()) {
+                int count = current.read(b, off, len);
+                if (count != -1) {
+                    return count;
+                }
+                closeSegment();
+            }
+            return -1;
+        }
+
+        /**
+         * Opens the next segment if no segment is open.
+         *
+         * @return false if all the segments have been read
+         */
+        private boolean nextSegment() throws IOException {
+            if (current == null) {
+                if (index >= segments.size()) {
+                    return false;
+                }
+                current = new FileInputStream(segments.get(index));
+                index++;
+            }
+            return true;
+        }
+
+        private void closeSegment() throws IOException {
+            try {
+                current.close();
+            } finally {
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            index = segments.size();
+            if (current != null) {
+                closeSegment();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package cz.net21.ttulka.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Segmented boundary output stream class.
+ * <p>
+ * Writes the boundary stream into a sequence of segment files. A new segment is started after a segment reached the max size or the max count of
+ * sub-streams, always at a sub-stream boundary. Therefore each segment is a valid boundary stream on its own and the segments can be read independently, or
+ * one after another as a single stream via <code>{@link SegmentedBoundaryInputStream}</code>.
+ *
+ * @author ttulka
+ */
+public class SegmentedBoundaryOutputStream extends BoundaryOutputStream {
+
+    /**
+     * Default pattern of segment file names.
+     */
+    public static final String DEFAULT_NAME_PATTERN = "segment-%05d.dat";
+
+    private final File directory;
+    private final String namePattern;
+    private final long maxSegmentSize;
+    private final long maxSubStreams;
+
+    private final CurrentSegment segment;
+    private final List<File> segments = new ArrayList<File>();
+    private long segmentSize = 0;
+    private long segmentSubStreams = 0;
+
+    /**
+     * Creates the segmented boundary output stream.
+     * <p>
+     * Uses the boundary from <code>{@link BoundaryStreamConsts}</code> and the default segment file names.
+     *
+     * @param directory      the directory for segments
+     * @param maxSegmentSize the max size of a segment in bytes, a segment is rolled after the first boundary exceeding it
+     * @param maxSubStreams  the max count of sub-streams in a segment
+     * @throws IOException if the first segment cannot be created
+     */
+    public SegmentedBoundaryOutputStream(File directory, long maxSegmentSize, long maxSubStreams) throws IOException {
+        this(directory, DEFAULT_NAME_PATTERN, BoundaryStreamConsts.BOUNDARY, maxSegmentSize, maxSubStreams);
+    }
+
+    /**
+     * Creates the segmented boundary output stream with an explicit boundary.
+     *
+     * @param directory      the directory for segments
+     * @param namePattern    the pattern of segment file names, formatted with the index of the segment
+     * @param boundary       the boundary
+     * @param maxSegmentSize the max size of a segment in bytes, a segment is rolled after the first boundary exceeding it
+     * @param maxSubStreams  the max count of sub-streams in a segment
+     * @throws IOException              if the first segment cannot be created
+     * @throws IllegalArgumentException when the max segment size or the max count of sub-streams is not positive
+     */
+    public SegmentedBoundaryOutputStream(File directory, String namePattern, byte[] boundary, long maxSegmentSize, long maxSubStreams)
+            throws IOException {
+        super(new CurrentSegment(), boundary);
+        if (maxSegmentSize <= 0) {
+            throw new IllegalArgumentException("Max segment size must be positive.");
+        }
+        if (maxSubStreams <= 0) {
+            throw new IllegalArgumentException("Max count of sub-streams must be positive.");
+        }
+        this.directory = directory;
+        this.namePattern = namePattern;
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxSubStreams = maxSubStreams;
+        this.segment = (CurrentSegment) outputStream;
+
+        nextSegment();
+    }
+
+    /**
+     * Returns the segment files written so far.
+     *
+     * @return the segment files
+     */
+    public List<File> getSegments() {
+        return Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * Writes the boundary into the current segment. Starts a new segment when the current one is full.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void boundary() throws IOException {
+        ensureSegment();
+        super.boundary();
+
+        segmentSize += boundary.length;
+        segmentSubStreams++;
+
+        if (segmentSize >= maxSegmentSize || segmentSubStreams >= maxSubStreams) {
+            segment.close();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureSegment();
+        super.write(b);
+
+        segmentSize++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureSegment();
+        super.write(b, off, len);
+
+        segmentSize += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (segment.file != null) {
+            super.flush();
+        }
+    }
+
+    /**
+     * Opens a next segment lazily, so no empty segment is created after the last boundary.
+     */
+    private void ensureSegment() throws IOException {
+        if (segment.file == null) {
+            nextSegment();
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        File file = new File(directory, String.format(namePattern, segments.size()));
+        segment.file = new FileOutputStream(file);
+        segments.add(file);
+
+        segmentSize = 0;
+        segmentSubStreams = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        segment.close();
+    }
+
+    /**
+     * Base stream of the segmented stream writing into the current segment file.
+     */
+    private static class CurrentSegment extends OutputStream {
+
+        private FileOutputStream file;
+
+        @Override
+        public void write(int b) throws IOException {
+            file.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            file.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            file.flush();
+        }
+
+        /**
+         * Closes the current segment file, if any.
+         */
+        @Override
+        public void close() throws IOException {
+            if (file != null) {
+                try {
+                    file.close();
+                } finally {
+                    file = null;
+                }
+            }
+        }
+    }
+}
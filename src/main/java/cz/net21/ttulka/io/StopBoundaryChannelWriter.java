@@ -0,0 +1,50 @@
+package cz.net21.ttulka.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Stop boundary writer for gathering byte channels.
+ *
+ * @author ttulka
+ */
+public class StopBoundaryChannelWriter extends BoundaryChannelWriter {
+
+    protected final byte[] stopBoundary;
+
+    /**
+     * Creates the stop boundary channel writer based on a base channel.
+     * <p>
+     * Uses the boundaries from <code>{@link BoundaryStreamConsts}</code>.
+     *
+     * @param channel the base channel
+     */
+    public StopBoundaryChannelWriter(GatheringByteChannel channel) {
+        this(channel, BoundaryStreamConsts.BOUNDARY, BoundaryStreamConsts.STOP_BOUNDARY);
+    }
+
+    /**
+     * Creates the stop boundary channel writer based on a base channel with explicit boundaries.
+     *
+     * @param channel      the base channel
+     * @param boundary     the boundary
+     * @param stopBoundary the stop boundary
+     * @throws IllegalArgumentException when the boundary is a substring of the stop boundary or vice versa
+     */
+    public StopBoundaryChannelWriter(GatheringByteChannel channel, byte[] boundary, byte[] stopBoundary) {
+        super(channel, boundary);
+        this.stopBoundary = stopBoundary.clone();
+
+        BoundaryStreamUtils.checkBoundaries(boundary, stopBoundary);
+    }
+
+    /**
+     * Writes the stop boundary into the base channel.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void stopBoundary() throws IOException {
+        writeFully(ByteBuffer.wrap(stopBoundary));
+    }
+}
@@ -2,6 +2,8 @@ package cz.net21.ttulka.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.NoSuchElementException;
 
 /**
@@ -11,7 +13,7 @@ import java.util.NoSuchElementException;
  */
 public class StopBoundaryInputStream extends BoundaryInputStream {
 
-    protected final int[] stopBoundary;
+    protected final byte[] stopBoundary;
 
     /**
      * Creates the stop boundary input stream based on a base input stream.
@@ -30,14 +32,49 @@ public class StopBoundaryInputStream extends BoundaryInputStream {
      * @param inputStream  the base input stream
      * @param boundary     the boundary
      * @param stopBoundary the stop boundary
+     * @throws IllegalArgumentException when the boundary is a substring of the stop boundary or vice versa
      */
     public StopBoundaryInputStream(InputStream inputStream, byte[] boundary, byte[] stopBoundary) {
-        super(inputStream, boundary, Math.max(boundary.length, stopBoundary.length));
-        this.stopBoundary = copyBoundary(stopBoundary);
+        this(inputStream, boundary, stopBoundary, null);
+    }
 
-        if (new String(boundary).contains(new String(stopBoundary)) || new String(stopBoundary).contains(new String(boundary))) {
-            throw new IllegalArgumentException("The boundary cannot be a substring of the stop boundary or vice versa.");
-        }
+    /**
+     * Creates the stop boundary input stream based on a base input stream with explicit boundaries.
+     * <p>
+     * The block buffer is acquired from the pool and released back when the stream is closed.
+     *
+     * @param inputStream  the base input stream
+     * @param boundary     the boundary
+     * @param stopBoundary the stop boundary
+     * @param bufferPool   the buffer pool
+     * @throws IllegalArgumentException when the boundary is a substring of the stop boundary or vice versa, or when the buffers of the pool are shorter
+     *                                  than the boundaries
+     */
+    public StopBoundaryInputStream(InputStream inputStream, byte[] boundary, byte[] stopBoundary, BoundaryBufferPool bufferPool) {
+        super(inputStream, boundary, Math.max(boundary.length, stopBoundary.length), bufferPool);
+        this.stopBoundary = stopBoundary.clone();
+
+        BoundaryStreamUtils.checkBoundaries(boundary, stopBoundary);
+    }
+
+    /**
+     * Opens the stop boundary input stream on the file channel at the checkpoint. The channel is positioned at the offset of the checkpoint, so the source is
+     * not read from the beginning.
+     *
+     * @param channel      the file channel
+     * @param boundary     the boundary
+     * @param stopBoundary the stop boundary
+     * @param checkpoint   the checkpoint
+     * @return the stop boundary input stream
+     * @throws IOException if an I/O error occurs
+     */
+    public static StopBoundaryInputStream open(FileChannel channel, byte[] boundary, byte[] stopBoundary, BoundaryCheckpoint checkpoint)
+            throws IOException {
+        channel.position(checkpoint.getOffset());
+
+        StopBoundaryInputStream sbis = new StopBoundaryInputStream(Channels.newInputStream(channel), boundary, stopBoundary);
+        sbis.restore(checkpoint);
+        return sbis;
     }
 
     /**
@@ -72,58 +109,37 @@ public class StopBoundaryInputStream extends BoundaryInputStream {
      */
     @Override
     public int read() throws IOException {
-        if (finished) {
-            return -1;
-        }
-        if (endOfCurrentStream) {
-            return -1;
-        }
-
-        initBuffer();
+        return super.read();
+    }
 
+    @Override
+    boolean consumeBoundary() throws IOException {
         // are we at the stopBoundary?
-        if (startsWith(buffer, stopBoundary)) {
+        if (isStopBoundaryAt(position)) {
             endOfCurrentStream = true;
             finished = true;
 
-            return -1;
+            return true;
         }
         // are we at the boundary?
-        if (startsWith(buffer, boundary)) {
-            endOfCurrentStream = true;
-
-            // remove this boundary bytes and read the rest
-            for (int i = 0; i < boundary.length; i++) {
-                readByteToBufferAndGet();
-            }
-
-            if (buffer[0] == -1 || startsWith(buffer, stopBoundary)) {
-                finished = true;
-            }
-
-            return -1;
-        }
+        return super.consumeBoundary();
+    }
 
-        // read always from the top of the buffer
-        int currentByte = readByteToBufferAndGet();
+    @Override
+    void checkFinished() throws IOException {
+        super.checkFinished();
 
-        // finish the reading
-        if (currentByte == -1) {
-            endOfCurrentStream = true;
+        if (isStopBoundaryAt(position)) {
             finished = true;
-
-            return -1;
         }
+    }
 
-        return currentByte;
+    @Override
+    boolean isBoundaryAt(int index) {
+        return super.isBoundaryAt(index) || isStopBoundaryAt(index);
     }
 
-    private boolean startsWith(int[] buffer, int[] prefix) {
-        for (int i = 0; i < prefix.length; i++) {
-            if (buffer[i] != prefix[i]) {
-                return false;
-            }
-        }
-        return true;
+    private boolean isStopBoundaryAt(int index) {
+        return BoundaryStreamUtils.startsWith(buffer, limit, index, stopBoundary);
     }
 }
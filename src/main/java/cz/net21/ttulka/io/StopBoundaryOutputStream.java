@@ -35,9 +35,7 @@ public class StopBoundaryOutputStream extends BoundaryOutputStream {
         super(outputStream, boundary);
         this.stopBoundary = stopBoundary;
 
-        if (new String(boundary).contains(new String(stopBoundary)) || new String(stopBoundary).contains(new String(boundary))) {
-            throw new IllegalArgumentException("The boundary cannot be a substring of the stop boundary or vice versa.");
-        }
+        BoundaryStreamUtils.checkBoundaries(boundary, stopBoundary);
     }
 
     /**
@@ -0,0 +1,170 @@
+package cz.net21.ttulka.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable arena of sub-streams.
+ * <p>
+ * Sub-streams of a batch are read into a single array, each sub-stream is a slice given by its offset and length. The arena is cleared and reused by the
+ * next batch, so reading many small sub-streams allocates no object per sub-stream. The array grows when a batch does not fit into it, the grown array is
+ * kept for next batches.
+ * <p>
+ * Filled by <code>{@link BoundaryInputStream#readSubStreams(SubStreamArena, int)}</code>, used as a batch by
+ * <code>{@link BoundaryInputStream#readBatch(int, int)}</code>.
+ *
+ * @author ttulka
+ */
+public class SubStreamArena {
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private byte[] data;
+    private int[] offsets;
+    private int[] lengths;
+
+    private int count = 0;
+    private int size = 0;
+
+    /**
+     * Creates the arena.
+     *
+     * @param capacity      the initial capacity in bytes, the soft limit of bytes in a batch
+     * @param maxSubStreams the max count of sub-streams in a batch
+     * @throws IllegalArgumentException when the capacity or the count of sub-streams is not positive
+     */
+    public SubStreamArena(int capacity, int maxSubStreams) {
+        super();
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        if (maxSubStreams <= 0) {
+            throw new IllegalArgumentException("Count of sub-streams must be positive.");
+        }
+        this.data = new byte[capacity];
+        this.offsets = new int[maxSubStreams];
+        this.lengths = new int[maxSubStreams];
+    }
+
+    /**
+     * Returns the count of sub-streams in the arena.
+     *
+     * @return the count of sub-streams
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the count of bytes of all the sub-streams in the arena.
+     *
+     * @return the count of bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the array holding the sub-streams. The array is replaced when the arena grows.
+     *
+     * @return the array
+     */
+    public byte[] array() {
+        return data;
+    }
+
+    /**
+     * Returns the offset of the sub-stream in the array.
+     *
+     * @param index the index of the sub-stream in the arena
+     * @return the offset
+     * @throws IndexOutOfBoundsException when no such sub-stream
+     */
+    public int offset(int index) {
+        checkIndex(index);
+        return offsets[index];
+    }
+
+    /**
+     * Returns the length of the sub-stream.
+     *
+     * @param index the index of the sub-stream in the arena
+     * @return the length
+     * @throws IndexOutOfBoundsException when no such sub-stream
+     */
+    public int length(int index) {
+        checkIndex(index);
+        return lengths[index];
+    }
+
+    /**
+     * Returns a read-only byte buffer wrapping the sub-stream, valid until the arena is cleared.
+     *
+     * @param index the index of the sub-stream in the arena
+     * @return the byte buffer
+     * @throws IndexOutOfBoundsException when no such sub-stream
+     */
+    public ByteBuffer slice(int index) {
+        checkIndex(index);
+        return ByteBuffer.wrap(data, offsets[index], lengths[index]).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Removes all the sub-streams, the arena is ready for the next batch.
+     */
+    public void clear() {
+        count = 0;
+        size = 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", count: " + count);
+        }
+    }
+
+    int capacity() {
+        return data.length;
+    }
+
+    int maxSubStreams() {
+        return offsets.length;
+    }
+
+    /**
+     * Starts a new sub-stream at the end of the arena.
+     */
+    void startSubStream() {
+        offsets[count] = size;
+        lengths[count] = 0;
+        count++;
+    }
+
+    /**
+     * Ensures free space at the end of the arena, the array grows if needed.
+     *
+     * @param length the count of bytes
+     * @throws IOException when the sub-streams do not fit into an array
+     */
+    void ensureFree(int length) throws IOException {
+        if (data.length - size < length) {
+            long required = (long) size + length;
+            if (required > MAX_ARRAY_SIZE) {
+                throw new IOException("Sub-streams are too long to fit into an array.");
+            }
+            byte[] array = new byte[(int) Math.min(Math.max((long) data.length * 2, required), MAX_ARRAY_SIZE)];
+            System.arraycopy(data, 0, array, 0, size);
+            data = array;
+        }
+    }
+
+    /**
+     * Appends bytes written at the end of the array to the current sub-stream.
+     *
+     * @param length the count of bytes
+     */
+    void appended(int length) {
+        size += length;
+        lengths[count - 1] += length;
+    }
+}
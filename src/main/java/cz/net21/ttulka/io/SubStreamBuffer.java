@@ -0,0 +1,246 @@
+package cz.net21.ttulka.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered sub-stream, re-readable as an input stream or a byte buffer.
+ * <p>
+ * The sub-stream is held in heap up to the threshold, a longer sub-stream is spilled into a temporary file, which is memory-mapped for reading. The heap
+ * usage is bounded by the threshold regardless of the sub-stream size. The temporary file is deleted when the buffer is closed.
+ * <p>
+ * Created by <code>{@link BoundaryInputStream#bufferSubStream(int)}</code>.
+ *
+ * @author ttulka
+ */
+public class SubStreamBuffer implements Closeable {
+
+    private static final int INITIAL_SIZE = 8192;
+    private static final int MAX_MAPPING_SIZE = 1 << 30;
+
+    private final int threshold;
+    private final File directory;
+
+    private byte[] heap;
+    private int count = 0;
+
+    private File file;
+    private OutputStream fileOut;
+    private ByteBuffer[] mappings;
+    private long size = 0;
+
+    private boolean closed = false;
+
+    /**
+     * @param threshold the max count of bytes held in heap
+     * @param directory the directory for the temporary file, or null for the default temporary directory
+     */
+    SubStreamBuffer(int threshold, File directory) {
+        super();
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative.");
+        }
+        this.threshold = threshold;
+        this.directory = directory;
+        this.heap = new byte[Math.min(threshold, INITIAL_SIZE)];
+    }
+
+    /**
+     * Returns an output stream writing into the buffer.
+     */
+    OutputStream writer() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                append(b, off, len);
+            }
+        };
+    }
+
+    private void append(byte[] b, int off, int len) throws IOException {
+        if (fileOut == null && count + len > threshold) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+        } else {
+            if (count + len > heap.length) {
+                byte[] grown = new byte[(int) Math.min(threshold, Math.max((long) heap.length * 2, count + len))];
+                System.arraycopy(heap, 0, grown, 0, count);
+                heap = grown;
+            }
+            System.arraycopy(b, off, heap, count, len);
+            count += len;
+        }
+        size += len;
+    }
+
+    /**
+     * Moves the heap data into a temporary file and releases the heap.
+     */
+    private void spill() throws IOException {
+        file = File.createTempFile("substream-", ".tmp", directory);
+        fileOut = new FileOutputStream(file);
+        fileOut.write(heap, 0, count);
+        heap = null;
+        count = 0;
+    }
+
+    /**
+     * Finishes writing, a spilled file is memory-mapped.
+     */
+    void finish() throws IOException {
+        if (fileOut == null) {
+            return;
+        }
+        fileOut.close();
+        fileOut = null;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            mappings = new ByteBuffer[(int) ((size + MAX_MAPPING_SIZE - 1) / MAX_MAPPING_SIZE)];
+            for (int i = 0; i < mappings.length; i++) {
+                long offset = (long) i * MAX_MAPPING_SIZE;
+                mappings[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAX_MAPPING_SIZE, size - offset));
+            }
+        } finally {
+            // mappings stay valid when the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the size of the sub-stream.
+     *
+     * @return the count of bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the sub-stream has been spilled into a temporary file.
+     *
+     * @return true if spilled, false if held in heap
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Returns a new input stream reading the sub-stream from the beginning.
+     *
+     * @return the input stream
+     * @throws IllegalStateException if the buffer is closed
+     */
+    public InputStream getInputStream() {
+        checkNotClosed();
+        if (mappings == null) {
+            return new ByteArrayInputStream(heap, 0, count);
+        }
+        final ByteBuffer[] buffers = new ByteBuffer[mappings.length];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = mappings[i].duplicate();
+        }
+        return new InputStream() {
+            private int current = 0;
+
+            @Override
+            public int read() {
+                ByteBuffer buffer = currentBuffer();
+                return buffer == null ? -1 : buffer.get() & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (off < 0 || len < 0 || len > b.length - off) {
+                    throw new IndexOutOfBoundsException();
+                }
+                if (len == 0) {
+                    return 0;
+                }
+                ByteBuffer buffer = currentBuffer();
+                if (buffer == null) {
+                    return -1;
+                }
+                int length = Math.min(len, buffer.remaining());
+                buffer.get(b, off, length);
+                return length;
+            }
+
+            @Override
+            public int available() {
+                ByteBuffer buffer = currentBuffer();
+                return buffer == null ? 0 : buffer.remaining();
+            }
+
+            private ByteBuffer currentBuffer() {
+                while (current < buffers.length && !buffers[current].hasRemaining()) {
+                    current++;
+                }
+                return current < buffers.length ? buffers[current] : null;
+            }
+        };
+    }
+
+    /**
+     * Returns a new read-only byte buffer with the whole sub-stream.
+     *
+     * @return the byte buffer
+     * @throws IllegalStateException if the buffer is closed or the sub-stream does not fit into a single byte buffer
+     */
+    public ByteBuffer asByteBuffer() {
+        checkNotClosed();
+        if (mappings == null) {
+            return ByteBuffer.wrap(heap, 0, count).slice().asReadOnlyBuffer();
+        }
+        if (mappings.length > 1) {
+            throw new IllegalStateException("Sub-stream is too long to fit into a byte buffer.");
+        }
+        return mappings[0].duplicate();
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("Buffer closed.");
+        }
+    }
+
+    /**
+     * Releases the buffer and deletes the temporary file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        heap = null;
+        mappings = null;
+        try {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+}
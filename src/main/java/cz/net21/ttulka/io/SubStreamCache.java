@@ -0,0 +1,237 @@
+package cz.net21.ttulka.io;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe cache of sub-streams read into arrays.
+ * <p>
+ * The cache is bounded by the total size of the cached sub-streams in bytes and evicts the least recently used ones. It is split into stripes by the key,
+ * each with its own lock and an equal part of the max size, so concurrent readers of different keys rarely contend.
+ * <p>
+ * Typically used in front of indexed access:
+ * <pre>
+ * byte[] data = cache.get(key, new SubStreamCache.Loader() {
+ *     public byte[] load(long key) throws IOException {
+ *         BoundaryInputStream bis = BoundaryInputStream.open(channel, boundary, index.checkpoint(key));
+ *         bis.next();
+ *         return bis.readSubStream();
+ *     }
+ * });
+ * </pre>
+ *
+ * @author ttulka
+ */
+public class SubStreamCache {
+
+    /**
+     * Default count of stripes.
+     */
+    public static final int DEFAULT_STRIPES = 16;
+
+    /**
+     * Loader of a sub-stream missing in the cache.
+     */
+    public interface Loader {
+
+        /**
+         * Loads the sub-stream of the key.
+         *
+         * @param key the key
+         * @return the sub-stream, or <code>null</code> if there is no sub-stream of the key
+         * @throws IOException if an I/O error occurs
+         */
+        byte[] load(long key) throws IOException;
+    }
+
+    private final Stripe[] stripes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates the cache with the default count of stripes.
+     *
+     * @param maxSize the max total size of cached sub-streams in bytes
+     */
+    public SubStreamCache(long maxSize) {
+        this(maxSize, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates the cache.
+     * <p>
+     * A sub-stream bigger than the max size divided by the count of stripes is never cached.
+     *
+     * @param maxSize the max total size of cached sub-streams in bytes
+     * @param stripes the count of stripes
+     * @throws IllegalArgumentException when the max size or the count of stripes is not positive
+     */
+    public SubStreamCache(long maxSize, int stripes) {
+        super();
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive.");
+        }
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Count of stripes must be positive.");
+        }
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(Math.max(1, maxSize / stripes));
+        }
+    }
+
+    /**
+     * Returns the cached sub-stream of the key.
+     *
+     * @param key the key
+     * @return the sub-stream, or <code>null</code> if not cached
+     */
+    public byte[] get(long key) {
+        byte[] data = stripe(key).get(key);
+        if (data != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return data;
+    }
+
+    /**
+     * Returns the cached sub-stream of the key, a missing one is loaded and cached. The loader is called without holding any lock, so concurrent misses of
+     * the same key may load it more times.
+     *
+     * @param key    the key
+     * @param loader the loader of a missing sub-stream
+     * @return the sub-stream, or <code>null</code> if the loader found no sub-stream of the key; nothing is cached then
+     * @throws IOException if an I/O error occurs in the loader
+     */
+    public byte[] get(long key, Loader loader) throws IOException {
+        byte[] data = get(key);
+        if (data == null) {
+            data = loader.load(key);
+            if (data != null) {
+                put(key, data);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Caches the sub-stream of the key. The array must not be modified afterwards.
+     *
+     * @param key  the key
+     * @param data the sub-stream
+     */
+    public void put(long key, byte[] data) {
+        evictions.addAndGet(stripe(key).put(key, data));
+    }
+
+    /**
+     * Removes the sub-stream of the key from the cache.
+     *
+     * @param key the key
+     */
+    public void remove(long key) {
+        stripe(key).remove(key);
+    }
+
+    /**
+     * Returns the total size of the cached sub-streams in bytes.
+     *
+     * @return the size in bytes
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the count of lookups of a cached sub-stream.
+     *
+     * @return the count of hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the count of lookups of a not cached sub-stream.
+     *
+     * @return the count of misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the count of sub-streams evicted to keep the max size.
+     *
+     * @return the count of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private Stripe stripe(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) ((hash >>> 33) % stripes.length)];
+    }
+
+    /**
+     * Part of the cache with its own lock.
+     */
+    private static class Stripe {
+
+        private final long maxSize;
+        private final LinkedHashMap<Long, byte[]> entries = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+        private long size = 0;
+
+        Stripe(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized byte[] get(long key) {
+            return entries.get(key);
+        }
+
+        /**
+         * Returns the count of evicted entries.
+         */
+        synchronized int put(long key, byte[] data) {
+            remove(key);
+            if (data.length > maxSize) {
+                return 0;
+            }
+            entries.put(key, data);
+            size += data.length;
+
+            int evicted = 0;
+            Iterator<Map.Entry<Long, byte[]>> iterator = entries.entrySet().iterator();
+            while (size > maxSize) {
+                size -= iterator.next().getValue().length;
+                iterator.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized void remove(long key) {
+            byte[] removed = entries.remove(key);
+            if (removed != null) {
+                size -= removed.length;
+            }
+        }
+
+        synchronized long size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package cz.net21.ttulka.io;
+
+/**
+ * Filter of sub-streams deciding by the first bytes of a sub-stream.
+ *
+ * @author ttulka
+ */
+public interface SubStreamFilter {
+
+    /**
+     * Decides whether the sub-stream is accepted. The header must not be modified and must not be used after this method returns.
+     *
+     * @param header the first bytes of the sub-stream
+     * @param length the count of valid bytes in the header, shorter than requested if the sub-stream is shorter
+     * @return true if the sub-stream is accepted, false if it should be skipped
+     */
+    boolean accept(byte[] header, int length);
+}
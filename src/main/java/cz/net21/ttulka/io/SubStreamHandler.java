@@ -0,0 +1,17 @@
+package cz.net21.ttulka.io;
+
+/**
+ * Handler of sub-streams processed by a pipeline.
+ *
+ * @author ttulka
+ */
+public interface SubStreamHandler {
+
+    /**
+     * Handles the sub-stream. The slice must not be used after this method returns.
+     *
+     * @param slice the sub-stream slice
+     * @throws Exception if the sub-stream cannot be handled
+     */
+    void handle(SubStreamSlice slice) throws Exception;
+}
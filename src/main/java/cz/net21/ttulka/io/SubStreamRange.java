@@ -0,0 +1,79 @@
+package cz.net21.ttulka.io;
+
+/**
+ * Position of a sub-stream in a boundary file.
+ *
+ * @author ttulka
+ */
+public final class SubStreamRange {
+
+    private final long index;
+    private final long offset;
+    private final long length;
+
+    /**
+     * Creates the sub-stream range.
+     *
+     * @param index  the index of the sub-stream
+     * @param offset the offset of the sub-stream data in the file
+     * @param length the length of the sub-stream data
+     */
+    public SubStreamRange(long index, long offset, long length) {
+        super();
+        this.index = index;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns the index of the sub-stream in the file, starting with zero.
+     *
+     * @return the index
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the offset of the sub-stream data in the file.
+     *
+     * @return the offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the length of the sub-stream data.
+     *
+     * @return the length
+     */
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SubStreamRange that = (SubStreamRange) o;
+        return index == that.index && offset == that.offset && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (index ^ (index >>> 32));
+        result = 31 * result + (int) (offset ^ (offset >>> 32));
+        result = 31 * result + (int) (length ^ (length >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SubStreamRange{index=" + index + ", offset=" + offset + ", length=" + length + "}";
+    }
+}
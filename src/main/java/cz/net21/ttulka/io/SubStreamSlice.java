@@ -0,0 +1,117 @@
+package cz.net21.ttulka.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Slice of a shared block holding a whole sub-stream.
+ * <p>
+ * The slice is valid only until it is released, the underlying block can be reused afterwards.
+ *
+ * @author ttulka
+ */
+public final class SubStreamSlice {
+
+    private final Block block;
+    private final long index;
+    private final int offset;
+    private final int length;
+
+    SubStreamSlice(Block block, long index, int offset, int length) {
+        super();
+        this.block = block;
+        this.index = index;
+        this.offset = offset;
+        this.length = length;
+
+        block.retain();
+    }
+
+    /**
+     * Returns the index of the sub-stream in the base stream, starting with zero.
+     *
+     * @return the index of the sub-stream
+     */
+    public long index() {
+        return index;
+    }
+
+    /**
+     * Returns the shared array holding the sub-stream data. The array must not be modified.
+     *
+     * @return the shared array
+     */
+    public byte[] array() {
+        return block.data;
+    }
+
+    /**
+     * Returns the offset of the sub-stream data in the shared array.
+     *
+     * @return the offset
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * Returns the length of the sub-stream.
+     *
+     * @return the length
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns a read-only byte buffer view of the sub-stream data.
+     *
+     * @return the byte buffer
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(block.data, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns an input stream view of the sub-stream data.
+     *
+     * @return the input stream
+     */
+    public InputStream asInputStream() {
+        return new ByteArrayInputStream(block.data, offset, length);
+    }
+
+    /**
+     * Releases the slice. The block is returned to its pool once all its slices are released.
+     */
+    void release() {
+        block.release();
+    }
+
+    /**
+     * Reference-counted block of data.
+     */
+    static final class Block {
+
+        final byte[] data;
+        private final BoundaryBufferPool pool;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        Block(byte[] data, BoundaryBufferPool pool) {
+            this.data = data;
+            this.pool = pool;
+        }
+
+        void retain() {
+            references.incrementAndGet();
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0 && pool != null && data.length == pool.getBufferSize()) {
+                pool.release(data);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import cz.net21.ttulka.io.AsyncBoundaryWriter;
+import cz.net21.ttulka.io.BoundaryInputStream;
+import cz.net21.ttulka.io.BoundaryStreamConsts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author ttulka
+ */
+public class AsyncBoundaryWriterTest {
+
+    @Test
+    public void closeOutputStreamTest() throws IOException {
+        OutputStream os = mock(OutputStream.class);
+        AsyncBoundaryWriter writer = new AsyncBoundaryWriter(os);
+
+        writer.close();
+
+        // Should close the base stream
+        verify(os).close();
+    }
+
+    @Test(timeout = 10000)
+    public void orderTest() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsyncBoundaryWriter writer = new AsyncBoundaryWriter(bytes, BoundaryStreamConsts.BOUNDARY, 16, 100, 5);
+
+        List<String> expected = new ArrayList<String>();
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (int i = 0; i < 500; i++) {
+                String subStream = "sub-stream " + i;
+                expected.add(subStream);
+                futures.add(writer.append(subStream.getBytes()));
+            }
+            // the last sub-streams are written after the max latency
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            writer.close();
+        }
+
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = new BoundaryInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            for (InputStream is : bis) {
+                results.add(IOUtils.toString(is, Charset.defaultCharset()));
+            }
+        } finally {
+            bis.close();
+        }
+
+        assertThat(results, is(expected));
+    }
+
+    @Test(timeout = 10000)
+    public void callbackFailedTest() throws Exception {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Disk full.");
+            }
+        };
+        final AtomicReference<IOException> error = new AtomicReference<IOException>();
+
+        AsyncBoundaryWriter writer = new AsyncBoundaryWriter(failing);
+        Future<Void> future;
+        try {
+            byte[] data = "abc".getBytes();
+            future = writer.append(data, 0, data.length, new AsyncBoundaryWriter.Callback() {
+                @Override
+                public void completed() {
+                }
+
+                @Override
+                public void failed(IOException e) {
+                    error.set(e);
+                }
+            });
+        } finally {
+            try {
+                writer.close();
+                throw new AssertionError("Writing failure expected.");
+
+            } catch (IOException e) {
+                assertThat(e.getCause().getMessage(), is("Disk full."));
+            }
+        }
+
+        Throwable cause = null;
+        try {
+            future.get();
+
+        } catch (ExecutionException e) {
+            cause = e.getCause();
+        }
+        assertThat(future.isDone(), is(true));
+        assertThat(cause.getMessage(), is("Disk full."));
+        assertThat(error.get().getMessage(), is("Disk full."));
+    }
+
+    @Test(timeout = 10000)
+    public void brokenWriterTest() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsyncBoundaryWriter writer = new AsyncBoundaryWriter(new ConcurrentBoundaryWriterTest.FailingOutputStream(bytes, 2),
+                                                             BoundaryStreamConsts.BOUNDARY, 10, 1, 0);
+
+        writer.append("abc".getBytes()).get();
+        Future<Void> failed = writer.append("defghijkl".getBytes());
+        Future<Void> pending = null;
+        try {
+            pending = writer.append("mno".getBytes());
+
+        } catch (IOException e) {
+            // the writer could be already broken
+        }
+
+        assertThat(causeOf(failed).getMessage(), is("Write failed."));
+        if (pending != null) {
+            // the pending sub-stream fails with the same error and is not written
+            assertThat(causeOf(pending).getMessage(), is("Write failed."));
+        }
+        try {
+            writer.append("xyz".getBytes());
+            throw new AssertionError("Writing failure expected.");
+
+        } catch (IOException e) {
+            assertThat(e.getCause().getMessage(), is("Write failed."));
+        }
+        try {
+            writer.close();
+            throw new AssertionError("Writing failure expected.");
+
+        } catch (IOException e) {
+            assertThat(e.getCause().getMessage(), is("Write failed."));
+        }
+
+        assertThat(bytes.toString(), is("abc" + new String(BoundaryStreamConsts.BOUNDARY) + "defg"));
+    }
+
+    private Throwable causeOf(Future<Void> future) throws InterruptedException {
+        try {
+            future.get();
+            throw new AssertionError("Writing failure expected.");
+
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void appendAfterCloseTest() throws IOException {
+        AsyncBoundaryWriter writer = new AsyncBoundaryWriter(new ByteArrayOutputStream());
+        writer.close();
+
+        writer.append("abc".getBytes());
+    }
+}
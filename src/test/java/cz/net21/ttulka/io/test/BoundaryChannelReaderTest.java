@@ -0,0 +1,164 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import cz.net21.ttulka.io.BoundaryChannelReader;
+import cz.net21.ttulka.io.BoundaryOutputStream;
+import cz.net21.ttulka.io.BoundaryStreamConsts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class BoundaryChannelReaderTest {
+
+    private static final String[] STRINGS = {
+            "abc", "", generateHugeString(), "x", "xyz"
+    };
+
+    @Test
+    public void transferTest() throws IOException {
+        byte[] data = write(STRINGS);
+
+        for (int bufferSize : new int[]{BoundaryStreamConsts.BOUNDARY.length + 1, 100, 8192}) {
+            List<String> results = new ArrayList<String>();
+
+            BoundaryChannelReader reader = reader(data, BoundaryStreamConsts.BOUNDARY, bufferSize);
+            try {
+                while (!reader.hasFinished()) {
+                    reader.next();
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    reader.transferSubStreamTo(Channels.newChannel(out));
+                    results.add(out.toString());
+                }
+            } finally {
+                reader.close();
+            }
+            assertThat(results, is(Arrays.asList(STRINGS)));
+        }
+    }
+
+    @Test
+    public void readChunkTest() throws IOException {
+        BoundaryChannelReader reader = reader(write(STRINGS), BoundaryStreamConsts.BOUNDARY, 100);
+        try {
+            reader.next();
+            ByteBuffer chunk = reader.readChunk();
+            assertThat(chunk.isReadOnly(), is(true));
+            assertThat(chunk.isDirect(), is(true));
+            assertThat(toString(chunk), is("abc"));
+            assertThat(reader.readChunk(), is(nullValue()));
+
+            reader.next();
+            assertThat(reader.readChunk(), is(nullValue()));
+
+            reader.next();  // skipped
+            reader.next();
+            assertThat(toString(reader.readChunk()), is("x"));
+
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void readSubStreamIntoTest() throws IOException {
+        BoundaryChannelReader reader = reader(write(new byte[]{'#', '#'}, "abcdefgh", "xyz"), new byte[]{'#', '#'}, 5);
+        try {
+            reader.next();
+            ByteBuffer dst = ByteBuffer.allocate(3);
+            assertThat(reader.readSubStreamInto(dst), is(3));
+            assertThat(new String(dst.array()), is("abc"));
+
+            dst.clear();
+            assertThat(reader.readSubStreamInto(dst), is(3));
+            assertThat(new String(dst.array()), is("def"));
+
+            dst.clear();
+            assertThat(reader.readSubStreamInto(dst), is(2));
+            assertThat(new String(dst.array(), 0, 2), is("gh"));
+
+            dst.clear();
+            assertThat(reader.readSubStreamInto(dst), is(-1));
+
+            reader.next();
+            assertThat(reader.readSubStreamInto(dst), is(3));
+            assertThat(new String(dst.array()), is("xyz"));
+            assertThat(reader.readSubStreamInto(ByteBuffer.allocate(1)), is(-1));
+            assertThat(reader.hasFinished(), is(true));
+
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void noBoundaryAtEndTest() throws IOException {
+        BoundaryChannelReader reader = reader("abc##xyz".getBytes(), new byte[]{'#', '#'}, 3);
+        try {
+            reader.next();
+            assertThat(toString(reader.readChunk()), is("ab"));
+            reader.next();
+            assertThat(toString(reader.readChunk()), is("xy"));
+            assertThat(toString(reader.readChunk()), is("z"));
+            assertThat(reader.readChunk(), is(nullValue()));
+            assertThat(reader.hasFinished(), is(true));
+
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooShortBufferTest() {
+        reader(new byte[0], new byte[]{'#', '#'}, 2);
+    }
+
+    private BoundaryChannelReader reader(byte[] data, byte[] boundary, int bufferSize) {
+        return new BoundaryChannelReader(Channels.newChannel(new ByteArrayInputStream(data)), boundary, bufferSize);
+    }
+
+    private String toString(ByteBuffer chunk) {
+        byte[] bytes = new byte[chunk.remaining()];
+        chunk.get(bytes);
+        return new String(bytes);
+    }
+
+    private byte[] write(String... strings) throws IOException {
+        return write(BoundaryStreamConsts.BOUNDARY, strings);
+    }
+
+    private byte[] write(byte[] boundary, String... strings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BoundaryOutputStream bos = new BoundaryOutputStream(bytes, boundary);
+        try {
+            for (String s : strings) {
+                bos.write(s.getBytes());
+                bos.boundary();
+            }
+        } finally {
+            bos.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String generateHugeString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            sb.append(i).append(',');
+        }
+        return sb.toString();
+    }
+}
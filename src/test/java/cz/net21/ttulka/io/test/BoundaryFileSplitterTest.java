@@ -0,0 +1,97 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cz.net21.ttulka.io.BoundaryFileSplitter;
+import cz.net21.ttulka.io.BoundaryOutputStream;
+import cz.net21.ttulka.io.SubStreamRange;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class BoundaryFileSplitterTest {
+
+    private static final String[] IMAGES = {"/image1.jpeg", "/image2.jpeg", "/image3.jpeg"};
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private File tmpFile;
+
+    @Before
+    public void setUp() throws IOException {
+        this.tmpFile = tmpFolder.newFile();
+    }
+
+    @Test
+    public void scanTest() throws IOException {
+        writeImages(true);
+
+        FileInputStream fis = new FileInputStream(tmpFile);
+        try {
+            List<SubStreamRange> ranges = new BoundaryFileSplitter().scan(fis.getChannel());
+
+            assertThat(ranges.size(), is(3));
+            assertThat(ranges.get(0).getOffset(), is(0L));
+            assertThat(ranges.get(0).getLength(), is(34948L));
+            assertThat(ranges.get(1).getLength(), is(80846L));
+            assertThat(ranges.get(2).getLength(), is(29260L));
+
+        } finally {
+            fis.close();
+        }
+    }
+
+    @Test
+    public void splitTest() throws IOException {
+        writeImages(true);
+
+        checkImages(new BoundaryFileSplitter().split(tmpFile, tmpFolder.newFolder(), "image-%d.jpeg"));
+    }
+
+    @Test
+    public void parallelSplitNoBoundaryAtEndTest() throws IOException {
+        writeImages(false);
+
+        checkImages(new BoundaryFileSplitter().split(tmpFile, tmpFolder.newFolder(), "image-%d.jpeg", 3));
+    }
+
+    private void writeImages(boolean boundaryAtEnd) throws IOException {
+        BoundaryOutputStream bos = null;
+        try {
+            bos = new BoundaryOutputStream(new FileOutputStream(tmpFile));
+
+            for (int i = 0; i < IMAGES.length; i++) {
+                IOUtils.copy(BoundaryFileSplitterTest.class.getResourceAsStream(IMAGES[i]), bos);
+                if (boundaryAtEnd || i < IMAGES.length - 1) {
+                    bos.boundary();
+                }
+            }
+        } finally {
+            bos.close();
+        }
+    }
+
+    private void checkImages(List<File> files) throws IOException {
+        assertThat(files.size(), is(IMAGES.length));
+
+        for (int i = 0; i < IMAGES.length; i++) {
+            byte[] expected = IOUtils.toByteArray(BoundaryFileSplitterTest.class.getResourceAsStream(IMAGES[i]));
+            assertThat(FileUtils.readFileToByteArray(files.get(i)), is(expected));
+        }
+    }
+}
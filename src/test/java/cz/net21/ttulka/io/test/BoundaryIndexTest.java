@@ -0,0 +1,139 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cz.net21.ttulka.io.BoundaryIndex;
+import cz.net21.ttulka.io.BoundaryInputStream;
+import cz.net21.ttulka.io.BoundaryStreamConsts;
+import cz.net21.ttulka.io.IndexedBoundaryOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class BoundaryIndexTest {
+
+    private static final int COUNT = 1000;
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private File tmpFile;
+    private File indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        this.tmpFile = tmpFolder.newFile();
+        this.indexFile = tmpFolder.newFile();
+    }
+
+    @Test
+    public void lookupTest() throws IOException {
+        IndexedBoundaryOutputStream ibos = new IndexedBoundaryOutputStream(new FileOutputStream(tmpFile), indexFile);
+        try {
+            for (int i = 0; i < COUNT; i++) {
+                ibos.write("sub-stream ".getBytes());
+                ibos.key(key(i));  // the key can be set anytime in the sub-stream
+                ibos.write(String.valueOf(i).getBytes());
+                ibos.boundary();
+            }
+        } finally {
+            ibos.close();
+        }
+
+        BoundaryIndex index = BoundaryIndex.open(indexFile);
+        RandomAccessFile raf = new RandomAccessFile(tmpFile, "r");
+        try {
+            assertThat(index.size(), is(COUNT));
+            assertThat(index.lookup(key(0)), is(0L));
+
+            for (int i : new int[]{0, 1, 500, COUNT - 1}) {
+                BoundaryInputStream bis = BoundaryInputStream.open(raf.getChannel(), BoundaryStreamConsts.BOUNDARY, index.checkpoint(key(i)));
+
+                bis.next();
+                assertThat(bis.getCheckpoint().getSubStreamIndex(), is((long) i));
+                assertThat(IOUtils.toString(bis, Charset.defaultCharset()), is("sub-stream " + i));
+            }
+
+            int falsePositives = 0;
+            for (int i = COUNT; i < COUNT * 2; i++) {
+                assertThat(index.lookup(key(i)), is(-1L));
+                assertThat(index.checkpoint(key(i)), is(nullValue()));
+                if (index.mightContain(key(i))) {
+                    falsePositives++;
+                }
+            }
+            assertThat(falsePositives < COUNT / 20, is(true));
+
+        } finally {
+            raf.close();
+            index.close();
+        }
+    }
+
+    @Test
+    public void rewriteIndexTest() throws IOException {
+        for (int count : new int[]{COUNT, 10}) {
+            IndexedBoundaryOutputStream ibos = new IndexedBoundaryOutputStream(new FileOutputStream(tmpFile), indexFile);
+            try {
+                for (int i = 0; i < count; i++) {
+                    ibos.key(key(i));
+                    ibos.write(String.valueOf(i).getBytes());
+                    ibos.boundary();
+                }
+            } finally {
+                ibos.close();
+            }
+        }
+
+        // the shorter index replaces the longer one
+        BoundaryIndex index = BoundaryIndex.open(indexFile);
+        try {
+            assertThat(index.size(), is(10));
+            assertThat(index.lookup(key(9)) != -1, is(true));
+            assertThat(index.lookup(key(10)), is(-1L));
+
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void emptyIndexTest() throws IOException {
+        new IndexedBoundaryOutputStream(new FileOutputStream(tmpFile), indexFile).close();
+
+        BoundaryIndex index = BoundaryIndex.open(indexFile);
+        try {
+            assertThat(index.size(), is(0));
+            assertThat(index.lookup(1L), is(-1L));
+
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void notIndexFileTest() throws IOException {
+        FileUtils.writeStringToFile(indexFile, "not an index file", Charset.defaultCharset());
+
+        BoundaryIndex.open(indexFile);
+    }
+
+    private long key(int i) {
+        return i * 7919L + 13;
+    }
+}
@@ -0,0 +1,112 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import cz.net21.ttulka.io.BoundaryBufferPool;
+import cz.net21.ttulka.io.BoundaryOutputStream;
+import cz.net21.ttulka.io.BoundaryPipeline;
+import cz.net21.ttulka.io.BoundaryStreamConsts;
+import cz.net21.ttulka.io.SubStreamHandler;
+import cz.net21.ttulka.io.SubStreamSlice;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class BoundaryPipelineTest {
+
+    @Test
+    public void pipelineTest() throws IOException {
+        String strings[] = new String[500];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = generateString(i % 7 == 0 ? i * 3 : i % 13);
+        }
+        checkPipeline(writeStringStreams(true, strings), strings);
+    }
+
+    @Test
+    public void noBoundaryAtEndTest() throws IOException {
+        String strings[] = {
+                "a", "", "bc", generateString(200), "def"
+        };
+        checkPipeline(writeStringStreams(false, strings), strings);
+    }
+
+    @Test
+    public void emptyStreamTest() throws IOException {
+        String strings[] = {
+                ""
+        };
+        checkPipeline(new byte[0], strings);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void handlerFailureTest() throws IOException {
+        byte[] bytes = writeStringStreams(true, "a", "b", "c");
+
+        BoundaryPipeline pipeline = new BoundaryPipeline(new ByteArrayInputStream(bytes), 2);
+        try {
+            pipeline.run(new SubStreamHandler() {
+                @Override
+                public void handle(SubStreamSlice slice) {
+                    throw new IllegalStateException("test");
+                }
+            });
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    private void checkPipeline(byte[] bytes, String[] strings) throws IOException {
+        final Map<Long, String> results = new ConcurrentHashMap<Long, String>();
+
+        BoundaryPipeline pipeline = new BoundaryPipeline(new ByteArrayInputStream(bytes), BoundaryStreamConsts.BOUNDARY, 4, 16,
+                                                         new BoundaryBufferPool(64, 8));
+        long count;
+        try {
+            count = pipeline.run(new SubStreamHandler() {
+                @Override
+                public void handle(SubStreamSlice slice) {
+                    results.put(slice.index(), new String(slice.array(), slice.offset(), slice.length()));
+                }
+            });
+        } finally {
+            pipeline.close();
+        }
+
+        assertThat(count, is((long) strings.length));
+        assertThat(results.size(), is(strings.length));
+        for (int i = 0; i < strings.length; i++) {
+            assertThat(results.get((long) i), is(strings[i]));
+        }
+    }
+
+    private String generateString(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+
+    private byte[] writeStringStreams(boolean boundaryAtEnd, String... strings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BoundaryOutputStream bos = new BoundaryOutputStream(bytes);
+        for (int i = 0; i < strings.length; i++) {
+            bos.write(strings[i].getBytes());
+            if (boundaryAtEnd || i < strings.length - 1) {
+                bos.boundary();
+            }
+        }
+        bos.close();
+        return bytes.toByteArray();
+    }
+}
@@ -1,5 +1,7 @@
 package cz.net21.ttulka.io.test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -7,12 +9,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Before;
@@ -22,9 +31,14 @@ import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import cz.net21.ttulka.io.BoundaryBufferPool;
+import cz.net21.ttulka.io.BoundaryCheckpoint;
+import cz.net21.ttulka.io.BoundaryChannelWriter;
 import cz.net21.ttulka.io.BoundaryInputStream;
 import cz.net21.ttulka.io.BoundaryOutputStream;
 import cz.net21.ttulka.io.BoundaryStreamConsts;
+import cz.net21.ttulka.io.SubStreamArena;
+import cz.net21.ttulka.io.SubStreamFilter;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -384,6 +398,649 @@ public class BoundaryStreamsTest {
         checkImagesStream();
     }
 
+    @Test
+    public void resetTest() throws IOException {
+        String strings1[] = {
+                "a", "bc", generateLongString()
+        };
+        String strings2[] = {
+                "def", generateLongString() + generateLongString()
+        };
+        File tmpFile2 = tmpFolder.newFile();
+        writeStringStreams(tmpFile, strings1);
+        writeStringStreams(tmpFile2, strings2);
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            List<String> results = new ArrayList<String>();
+            for (InputStream is : bis) {
+                results.add(readStream(is));
+            }
+            compareResults(strings1, results.toArray(new String[0]));
+
+            bis.close();
+            bis.reset(new FileInputStream(tmpFile2));
+
+            results = new ArrayList<String>();
+            for (InputStream is : bis) {
+                results.add(readStream(is));
+            }
+            compareResults(strings2, results.toArray(new String[0]));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void bufferPoolTest() throws IOException {
+        String strings[] = {
+                "a", "bc", "def", generateLongString(), generateLongString() + generateLongString()
+        };
+        writeStringStreams(tmpFile, strings);
+
+        BoundaryBufferPool pool = new BoundaryBufferPool(BoundaryStreamConsts.BOUNDARY.length, 1);
+
+        for (int i = 0; i < 3; i++) {
+            List<String> results = new ArrayList<String>();
+
+            BoundaryInputStream bis = null;
+            try {
+                bis = new BoundaryInputStream(new FileInputStream(tmpFile), BoundaryStreamConsts.BOUNDARY, pool);
+
+                for (InputStream is : bis) {
+                    results.add(readStream(is));
+                }
+            } finally {
+                bis.close();
+            }
+
+            compareResults(strings, results.toArray(new String[0]));
+        }
+    }
+
+    @Test
+    public void bufferPoolReuseTest() {
+        BoundaryBufferPool pool = new BoundaryBufferPool(16, 1);
+
+        byte[] buffer = pool.acquire();
+        pool.release(buffer);
+
+        assertThat(pool.acquire() == buffer, is(true));
+        assertThat(pool.acquire() == buffer, is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bufferPoolTooSmallTest() {
+        InputStream is = mock(InputStream.class);
+        new BoundaryInputStream(is, BoundaryStreamConsts.BOUNDARY, new BoundaryBufferPool(BoundaryStreamConsts.BOUNDARY.length - 1, 1));
+    }
+
+    @Test
+    public void nonAsciiBoundaryTest() throws IOException {
+        byte[] boundary = {(byte) 0xFF, (byte) 0x80, (byte) 0xFE};
+
+        String strings[] = {
+                "a", "bc", "def", generateLongString()
+        };
+        writeStringStreams(tmpFile, boundary, strings);
+
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile), boundary);
+
+            for (InputStream is : bis) {
+                results.add(readStream(is));
+            }
+        } finally {
+            bis.close();
+        }
+
+        compareResults(strings, results.toArray(new String[0]));
+    }
+
+    @Test
+    public void readSubStreamTest() throws IOException {
+        String strings[] = {
+                "a", "", "bc", generateLongString(), generateHugeString()
+        };
+        writeStringStreams(tmpFile, strings);
+
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            while (!bis.hasFinished()) {
+                bis.next();
+                results.add(new String(bis.readSubStream()));
+                assertThat(bis.read(), is(-1));
+            }
+        } finally {
+            bis.close();
+        }
+
+        compareResults(strings, results.toArray(new String[0]));
+    }
+
+    @Test
+    public void readSubStreamMarkTest() throws IOException {
+        String huge = generateHugeString();
+        writeStringStreams(tmpFile, new String[]{huge, "xyz"});
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            bis.next();
+            bis.mark(10);
+            assertThat(bis.read(), is((int) huge.charAt(0)));
+            // the marked bytes are kept while the rest is read
+            assertThat(new String(bis.readSubStream()), is(huge.substring(1)));
+
+            bis.reset();
+            assertThat(new String(bis.readSubStream()), is(huge));
+
+            bis.next();
+            assertThat(new String(bis.readSubStream()), is("xyz"));
+            assertThat(bis.hasFinished(), is(true));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void readSubStreamIntoTest() throws IOException {
+        String strings[] = {
+                "a", "bc", generateLongString(), generateHugeString()
+        };
+        writeStringStreams(tmpFile, strings);
+
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+            ByteBuffer buffer = ByteBuffer.allocateDirect(100);
+
+            while (!bis.hasFinished()) {
+                bis.next();
+                StringBuilder sb = new StringBuilder();
+                while (bis.readSubStreamInto(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        sb.append((char) buffer.get());
+                    }
+                    buffer.clear();
+                }
+                results.add(sb.toString());
+            }
+        } finally {
+            bis.close();
+        }
+
+        compareResults(strings, results.toArray(new String[0]));
+    }
+
+    @Test
+    public void transferSubStreamTest() throws IOException {
+        String strings[] = {
+                "a", "bc", generateLongString(), generateHugeString()
+        };
+        writeStringStreams(tmpFile, strings);
+
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            boolean channel = false;
+            while (!bis.hasFinished()) {
+                bis.next();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                long transferred = channel
+                                   ? bis.transferSubStreamTo(Channels.newChannel(out))
+                                   : bis.transferSubStreamTo(out);
+                assertThat(transferred, is((long) out.size()));
+
+                results.add(out.toString());
+                channel = !channel;
+            }
+        } finally {
+            bis.close();
+        }
+
+        compareResults(strings, results.toArray(new String[0]));
+    }
+
+    @Test
+    public void channelWriterTest() throws IOException {
+        String strings[] = {
+                "a", "bc", "def", generateLongString(), generateHugeString()
+        };
+
+        BoundaryChannelWriter writer = null;
+        try {
+            writer = new BoundaryChannelWriter(new FileOutputStream(tmpFile).getChannel());
+
+            writer.write(ByteBuffer.wrap(strings[0].getBytes()));
+            writer.boundary();
+
+            writer.writeSubStream(ByteBuffer.wrap(strings[1].getBytes()));
+
+            writer.writeSubStreams(ByteBuffer.wrap(strings[2].getBytes()),
+                                   ByteBuffer.wrap(strings[3].getBytes()),
+                                   ByteBuffer.wrap(strings[4].getBytes()));
+        } finally {
+            writer.close();
+        }
+
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            for (InputStream is : bis) {
+                results.add(readStream(is));
+            }
+        } finally {
+            bis.close();
+        }
+
+        compareResults(strings, results.toArray(new String[0]));
+    }
+
+    @Test
+    public void checkpointTest() throws IOException {
+        String str2 = generateLongString();
+        String strings[] = {
+                "a", str2, "def", generateHugeString()
+        };
+        writeStringStreams(tmpFile, strings);
+
+        BoundaryCheckpoint checkpoint1;
+        BoundaryCheckpoint checkpoint2;
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            bis.next();
+            assertThat(readStream(bis), is("a"));
+            checkpoint1 = bis.getCheckpoint();
+
+            bis.next();
+            for (int i = 0; i < 3; i++) {
+                assertThat(bis.read(), is((int) str2.charAt(i)));
+            }
+            checkpoint2 = bis.getCheckpoint();
+
+        } finally {
+            bis.close();
+        }
+
+        assertThat(checkpoint1.getSubStreamIndex(), is(0L));
+        assertThat(checkpoint1.getOffset(), is((long) ("a".length() + BoundaryStreamConsts.BOUNDARY.length)));
+        assertThat(checkpoint2.getSubStreamIndex(), is(1L));
+        assertThat(checkpoint2.getOffset(), is(checkpoint1.getOffset() + 3));
+
+        RandomAccessFile raf = new RandomAccessFile(tmpFile, "r");
+        try {
+            bis = BoundaryInputStream.open(raf.getChannel(), BoundaryStreamConsts.BOUNDARY, checkpoint1);
+
+            List<String> results = new ArrayList<String>();
+            for (InputStream is : bis) {
+                results.add(readStream(is));
+            }
+            compareResults(new String[]{str2, "def", strings[3]}, results.toArray(new String[0]));
+
+        } finally {
+            bis.close();
+        }
+
+        raf = new RandomAccessFile(tmpFile, "r");
+        try {
+            bis = BoundaryInputStream.open(raf.getChannel(), BoundaryStreamConsts.BOUNDARY, checkpoint2);
+
+            assertThat(readStream(bis), is(str2.substring(3)));
+            assertThat(bis.getCheckpoint().getSubStreamIndex(), is(1L));
+
+            bis.next();
+            assertThat(readStream(bis), is("def"));
+            assertThat(bis.getCheckpoint().getSubStreamIndex(), is(2L));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void markResetTest() throws IOException {
+        String huge = generateHugeString();
+        String strings[] = {
+                "abcdef", huge, "xyz"
+        };
+        writeStringStreams(tmpFile, strings);
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile), BoundaryStreamConsts.BOUNDARY, new BoundaryBufferPool(1));
+            assertThat(bis.markSupported(), is(true));
+
+            // sniff the header
+            bis.next();
+            bis.mark(3);
+            assertThat(bis.read(), is((int) 'a'));
+            assertThat(bis.read(), is((int) 'b'));
+            bis.reset();
+            assertThat(readStream(bis), is("abcdef"));
+
+            // reset from the end of the sub-stream, the marked bytes grow the buffer
+            bis.next();
+            bis.mark(huge.length());
+            assertThat(readStream(bis), is(huge));
+            bis.reset();
+            assertThat(readStream(bis), is(huge));
+
+            bis.next();
+            assertThat(readStream(bis), is("xyz"));
+            assertThat(bis.hasFinished(), is(true));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void markInvalidatedByNextTest() throws IOException {
+        writeStringStreams(tmpFile, "abc", "def");
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            bis.next();
+            bis.mark(10);
+            bis.next();
+
+            bis.reset();
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void peekTest() throws IOException {
+        String huge = generateHugeString();
+        writeStringStreams(tmpFile, "abc", "", "de", huge);
+
+        byte[] header = new byte[5];
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            bis.next();
+            assertThat(bis.peek(header, 0, 2), is(2));
+            assertThat(new String(header, 0, 2), is("ab"));
+            assertThat(readStream(bis), is("abc"));
+
+            bis.next();
+            assertThat(bis.peek(header, 0, 2), is(-1));
+
+            bis.next();
+            assertThat(bis.peek(header, 0, 5), is(2));
+            assertThat(new String(header, 0, 2), is("de"));
+            assertThat(readStream(bis), is("de"));
+
+            bis.next();
+            assertThat(bis.peek(header, 0, 5), is(5));
+            assertThat(new String(header, 0, 5), is(huge.substring(0, 5)));
+            assertThat(readStream(bis), is(huge));
+            assertThat(bis.hasFinished(), is(true));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void filterTest() throws IOException {
+        writeStringStreams(tmpFile, "Aone", "Btwo", generateHugeString(), "Athree", "", "Afour", "Blast");
+
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            for (InputStream is : bis.filter(1, new SubStreamFilter() {
+                @Override
+                public boolean accept(byte[] header, int length) {
+                    return length == 1 && header[0] == 'A';
+                }
+            })) {
+                results.add(readStream(is));
+            }
+            assertThat(bis.hasFinished(), is(true));
+
+        } finally {
+            bis.close();
+        }
+
+        compareResults(new String[]{"Aone", "Athree", "Afour"}, results.toArray(new String[0]));
+    }
+
+    @Test
+    public void headerTest() throws IOException {
+        Map<String, String> header1 = new LinkedHashMap<String, String>();
+        header1.put("type", "text/plain");
+        header1.put("id", "\u010dau");
+        Map<String, String> header2 = new LinkedHashMap<String, String>();
+        String huge = generateHugeString();
+
+        BoundaryOutputStream bos = null;
+        try {
+            bos = new BoundaryOutputStream(new FileOutputStream(tmpFile));
+
+            bos.header(header1);
+            bos.write("abc".getBytes());
+            bos.boundary();
+
+            bos.header(header2);
+            bos.write(huge.getBytes());
+            bos.boundary();
+
+        } finally {
+            bos.close();
+        }
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            bis.next();
+            Map<String, String> result = bis.readHeader();
+            assertThat(result, is(header1));
+            assertThat(new ArrayList<String>(result.keySet()), is(Arrays.asList("type", "id")));
+            assertThat(readStream(bis), is("abc"));
+
+            bis.next();
+            assertThat(bis.readHeader(), is(header2));
+            assertThat(readStream(bis), is(huge));
+
+            assertThat(bis.hasFinished(), is(true));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void noHeaderTest() throws IOException {
+        writeStringStreams(tmpFile, "a");
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            bis.next();
+            bis.readHeader();
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void readSubStreamsTest() throws IOException {
+        String huge = generateHugeString();
+        writeStringStreams(tmpFile, "abc", "", "defg", "h", huge, "xyz");
+
+        SubStreamArena arena = new SubStreamArena(8, 3);
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            // the count of sub-streams
+            assertThat(bis.readSubStreams(arena, 10), is(3));
+            assertThat(arena.size(), is(7));
+            assertThat(new String(arena.array(), arena.offset(0), arena.length(0)), is("abc"));
+            assertThat(arena.length(1), is(0));
+            assertThat(new String(arena.array(), arena.offset(2), arena.length(2)), is("defg"));
+
+            // the capacity, the arena grows for a long sub-stream
+            assertThat(bis.readSubStreams(arena, 10), is(2));
+            assertThat(new String(arena.array(), arena.offset(0), arena.length(0)), is("h"));
+            assertThat(new String(arena.array(), arena.offset(1), arena.length(1)), is(huge));
+
+            // the end of the stream
+            assertThat(bis.readSubStreams(arena, 10), is(1));
+            assertThat(arena.slice(0), is(ByteBuffer.wrap("xyz".getBytes())));
+
+            assertThat(bis.readSubStreams(arena, 10), is(0));
+            assertThat(bis.hasFinished(), is(true));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void claimNextTest() throws Exception {
+        final String[] strings = new String[2000];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = i % 100 == 0 ? generateLongString() + i : "record" + i;
+        }
+        writeStringStreams(tmpFile, strings);
+
+        final String[] results = new String[strings.length];
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        final BoundaryInputStream bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+        try {
+            Thread[] consumers = new Thread[4];
+            for (int c = 0; c < consumers.length; c++) {
+                consumers[c] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        SubStreamArena arena = new SubStreamArena(64, 1);
+                        try {
+                            long index;
+                            while ((index = bis.claimNext(arena)) != -1) {
+                                assertThat(results[(int) index] == null, is(true));
+                                results[(int) index] = new String(arena.array(), arena.offset(0), arena.length(0));
+                            }
+                        } catch (Throwable t) {
+                            failure.set(t);
+                        }
+                    }
+                });
+                consumers[c].start();
+            }
+            for (Thread consumer : consumers) {
+                consumer.join();
+            }
+        } finally {
+            bis.close();
+        }
+
+        assertThat(failure.get() == null, is(true));
+        compareResults(strings, results);
+    }
+
+    @Test
+    public void readBatchTest() throws IOException {
+        String[] strings = new String[1000];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = "record" + i;
+        }
+        writeStringStreams(tmpFile, strings);
+
+        List<String> results = new ArrayList<String>();
+        SubStreamArena previous = null;
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            SubStreamArena batch;
+            while ((batch = bis.readBatch(300, 2000)).count() > 0) {
+                assertThat(batch.count() <= 300, is(true));
+                assertThat(batch.size() < 2000 + 10, is(true));
+
+                // the batch is reused
+                assertThat(previous == null || previous == batch, is(true));
+                previous = batch;
+
+                for (int i = 0; i < batch.count(); i++) {
+                    results.add(new String(batch.array(), batch.offset(i), batch.length(i)));
+                }
+            }
+            assertThat(bis.hasFinished(), is(true));
+
+        } finally {
+            bis.close();
+        }
+
+        compareResults(strings, results.toArray(new String[0]));
+    }
+
+    @Test
+    public void readBatchUnlimitedBytesTest() throws IOException {
+        String[] strings = {"a", generateHugeString(), "bc", generateLongString()};
+        writeStringStreams(tmpFile, strings);
+
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new FileInputStream(tmpFile));
+
+            // the soft limit of bytes is not allocated up front
+            SubStreamArena batch;
+            while ((batch = bis.readBatch(3, Integer.MAX_VALUE)).count() > 0) {
+                for (int i = 0; i < batch.count(); i++) {
+                    results.add(new String(batch.array(), batch.offset(i), batch.length(i)));
+                }
+            }
+        } finally {
+            bis.close();
+        }
+
+        compareResults(strings, results.toArray(new String[0]));
+    }
+
     private void checkImagesStream() throws IOException {
         File[] imageFiles = {tmpFolder.newFile(), tmpFolder.newFile(), tmpFolder.newFile()};
 
@@ -463,6 +1120,15 @@ public class BoundaryStreamsTest {
         return sb.toString();
     }
 
+    // longer than the block buffer
+    private String generateHugeString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BoundaryBufferPool.DEFAULT_BUFFER_SIZE * 3; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+
     private void writeStringStreams(File file, String... strings) throws IOException {
         BoundaryOutputStream bos = null;
         try {
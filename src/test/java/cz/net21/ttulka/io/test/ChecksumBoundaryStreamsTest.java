@@ -0,0 +1,290 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import cz.net21.ttulka.io.BoundaryInputStream;
+import cz.net21.ttulka.io.BoundaryOutputStream;
+import cz.net21.ttulka.io.BoundaryStreamConsts;
+import cz.net21.ttulka.io.ChecksumBoundaryInputStream;
+import cz.net21.ttulka.io.ChecksumBoundaryOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class ChecksumBoundaryStreamsTest {
+
+    private static final String[] STRINGS = {
+            "abc", "", generateHugeString(), "xyz"
+    };
+
+    @Test
+    public void computeChecksumTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        List<Long> written = new ArrayList<Long>();
+
+        BoundaryOutputStream bos = new BoundaryOutputStream(bytes, BoundaryStreamConsts.BOUNDARY, new CRC32());
+        try {
+            for (String s : STRINGS) {
+                bos.write(s.getBytes());
+                written.add(bos.getChecksum());
+                bos.boundary();
+            }
+        } finally {
+            bos.close();
+        }
+
+        BoundaryInputStream bis = new BoundaryInputStream(new ByteArrayInputStream(bytes.toByteArray()), BoundaryStreamConsts.BOUNDARY, new CRC32());
+        try {
+            for (int i = 0; i < STRINGS.length; i++) {
+                bis.next();
+                assertThat(IOUtils.toString(bis, Charset.defaultCharset()), is(STRINGS[i]));
+                assertThat(bis.getChecksum(), is(crc(STRINGS[i])));
+                assertThat(bis.getChecksum(), is(written.get(i)));
+            }
+            assertThat(bis.hasFinished(), is(true));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void computeChecksumMarkResetTest() throws IOException {
+        byte[] data = ("abcdefgh" + new String(BoundaryStreamConsts.BOUNDARY) + "xyz").getBytes();
+
+        BoundaryInputStream bis = new BoundaryInputStream(new ByteArrayInputStream(data), BoundaryStreamConsts.BOUNDARY, new CRC32());
+        try {
+            bis.next();
+            bis.read();
+            bis.mark(100);
+            bis.read(new byte[5]);
+            bis.reset();
+
+            // the re-read bytes are not counted twice
+            assertThat(IOUtils.toString(bis, Charset.defaultCharset()), is("bcdefgh"));
+            assertThat(bis.getChecksum(), is(crc("abcdefgh")));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void verifyChecksumTest() throws IOException {
+        byte[] data = write(STRINGS);
+
+        // the trailers are not part of sub-streams
+        assertThat(read(data), is(Arrays.asList(STRINGS)));
+    }
+
+    @Test
+    public void shortBoundaryTest() throws IOException {
+        for (byte[] boundary : new byte[][]{{'#'}, {0}, {'A', 'B'}}) {
+            Random random = new Random(42);
+            List<byte[]> subStreams = new ArrayList<byte[]>();
+            for (int i = 0; i < 2000; i++) {
+                byte[] subStream = new byte[random.nextInt(100)];
+                random.nextBytes(subStream);
+                for (int j = 0; j < subStream.length; j++) {
+                    // the data must not contain the boundary
+                    if (subStream[j] == boundary[0]) {
+                        subStream[j]++;
+                    }
+                }
+                subStreams.add(subStream);
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ChecksumBoundaryOutputStream cbos = new ChecksumBoundaryOutputStream(bytes, boundary, new CRC32());
+            try {
+                for (byte[] subStream : subStreams) {
+                    cbos.write(subStream);
+                    cbos.boundary();
+                }
+            } finally {
+                cbos.close();
+            }
+
+            int count = 0;
+            ChecksumBoundaryInputStream cbis = new ChecksumBoundaryInputStream(new ByteArrayInputStream(bytes.toByteArray()), boundary, new CRC32());
+            try {
+                for (InputStream is : cbis) {
+                    assertThat(IOUtils.toByteArray(is), is(subStreams.get(count++)));
+                }
+            } finally {
+                cbis.close();
+            }
+            assertThat(count, is(subStreams.size()));
+        }
+    }
+
+    @Test
+    public void skipVerifiedSubStreamTest() throws IOException {
+        ChecksumBoundaryInputStream cbis = new ChecksumBoundaryInputStream(new ByteArrayInputStream(write(STRINGS)));
+        try {
+            cbis.next();
+            cbis.next();
+            cbis.next();
+            cbis.next();
+            assertThat(IOUtils.toString(cbis, Charset.defaultCharset()), is("xyz"));
+            assertThat(cbis.hasFinished(), is(true));
+
+        } finally {
+            cbis.close();
+        }
+    }
+
+    @Test
+    public void corruptedSubStreamTest() throws IOException {
+        byte[] data = write("abc", "def", "ghi");
+        data[data.length - 2] = 'X'; // the last sub-stream without a boundary
+
+        ChecksumBoundaryInputStream cbis = new ChecksumBoundaryInputStream(new ByteArrayInputStream(data));
+        try {
+            cbis.next();
+            assertThat(IOUtils.toString(cbis, Charset.defaultCharset()), is("abc"));
+            cbis.next();
+            assertThat(IOUtils.toString(cbis, Charset.defaultCharset()), is("def"));
+            cbis.next();
+            try {
+                IOUtils.toString(cbis, Charset.defaultCharset());
+                throw new AssertionError("Checksum mismatch expected.");
+
+            } catch (IOException e) {
+                assertThat(e.getMessage(), is("Checksum mismatch of the sub-stream."));
+            }
+            assertThat(cbis.hasFinished(), is(true));
+
+        } finally {
+            cbis.close();
+        }
+    }
+
+    @Test
+    public void corruptedMiddleSubStreamTest() throws IOException {
+        byte[] data = write("abc", "def", "ghi", "jkl");
+        data[new String(data).indexOf("def")] = 'X';
+
+        ChecksumBoundaryInputStream cbis = new ChecksumBoundaryInputStream(new ByteArrayInputStream(data));
+        try {
+            cbis.next();
+            assertThat(IOUtils.toString(cbis, Charset.defaultCharset()), is("abc"));
+            cbis.next();
+            try {
+                // the corrupted sub-stream is skipped
+                cbis.next();
+                throw new AssertionError("Checksum mismatch expected.");
+
+            } catch (IllegalStateException e) {
+                assertThat(e.getCause().getMessage(), is("Checksum mismatch of the sub-stream."));
+            }
+            // the reading continues
+            assertThat(cbis.hasFinished(), is(false));
+            cbis.next();
+            assertThat(IOUtils.toString(cbis, Charset.defaultCharset()), is("ghi"));
+            cbis.next();
+            assertThat(IOUtils.toString(cbis, Charset.defaultCharset()), is("jkl"));
+            assertThat(cbis.hasFinished(), is(true));
+
+        } finally {
+            cbis.close();
+        }
+    }
+
+    @Test
+    public void corruptedMiddleSubStreamIteratorTest() throws IOException {
+        byte[] data = write("abc", "def", "ghi", "jkl");
+        data[new String(data).indexOf("def")] = 'X';
+
+        List<String> results = new ArrayList<String>();
+        int errors = 0;
+
+        ChecksumBoundaryInputStream cbis = new ChecksumBoundaryInputStream(new ByteArrayInputStream(data));
+        try {
+            while (!cbis.hasFinished()) {
+                cbis.next();
+                try {
+                    results.add(IOUtils.toString(cbis, Charset.defaultCharset()));
+
+                } catch (IOException e) {
+                    errors++;
+                }
+            }
+        } finally {
+            cbis.close();
+        }
+
+        assertThat(errors, is(1));
+        assertThat(results, is(Arrays.asList("abc", "ghi", "jkl")));
+    }
+
+    @Test(expected = IOException.class)
+    public void missingChecksumTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BoundaryOutputStream bos = new BoundaryOutputStream(bytes);
+        bos.write("abcdefghijklmnopqrstuvwxyz".getBytes());
+        bos.boundary();
+        bos.close();
+
+        read(bytes.toByteArray());
+    }
+
+    private byte[] write(String... strings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ChecksumBoundaryOutputStream cbos = new ChecksumBoundaryOutputStream(bytes);
+        try {
+            for (int i = 0; i < strings.length; i++) {
+                cbos.write(strings[i].getBytes());
+                if (i < strings.length - 1) {
+                    cbos.boundary();
+                }
+            }
+        } finally {
+            cbos.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<String> read(byte[] data) throws IOException {
+        List<String> results = new ArrayList<String>();
+
+        ChecksumBoundaryInputStream cbis = new ChecksumBoundaryInputStream(new ByteArrayInputStream(data));
+        try {
+            for (InputStream is : cbis) {
+                results.add(IOUtils.toString(is, Charset.defaultCharset()));
+            }
+        } finally {
+            cbis.close();
+        }
+        return results;
+    }
+
+    private long crc(String s) {
+        CRC32 crc = new CRC32();
+        crc.update(s.getBytes());
+        return crc.getValue();
+    }
+
+    private static String generateHugeString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            sb.append(i).append(',');
+        }
+        return sb.toString();
+    }
+}
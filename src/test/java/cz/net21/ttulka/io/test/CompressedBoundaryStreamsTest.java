@@ -0,0 +1,232 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import cz.net21.ttulka.io.BoundaryInputStream;
+import cz.net21.ttulka.io.CompressedBoundaryInputStream;
+import cz.net21.ttulka.io.CompressedBoundaryOutputStream;
+import cz.net21.ttulka.io.SubStreamArena;
+import cz.net21.ttulka.io.SubStreamFilter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class CompressedBoundaryStreamsTest {
+
+    private static final String[] IMAGES = {"/image1.jpeg", "/image2.jpeg", "/image3.jpeg"};
+
+    @Test
+    public void textTest() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        List<byte[]> subStreams = new ArrayList<byte[]>();
+        subStreams.add("abc".getBytes());
+        subStreams.add(new byte[0]);
+        subStreams.add(sb.toString().getBytes());
+        subStreams.add("xyz".getBytes());
+
+        byte[] compressed = write(subStreams, new byte[]{'-', '-', 'B', '-', '-'});
+
+        assertThat(compressed.length < sb.length() / 4, is(true));
+        checkResults(subStreams, read(compressed, new byte[]{'-', '-', 'B', '-', '-'}));
+    }
+
+    @Test
+    public void binaryDataTest() throws IOException {
+        List<byte[]> subStreams = new ArrayList<byte[]>();
+        for (String image : IMAGES) {
+            subStreams.add(IOUtils.toByteArray(CompressedBoundaryStreamsTest.class.getResourceAsStream(image)));
+        }
+        byte[] random = new byte[100000];
+        new Random(42).nextBytes(random);
+        subStreams.add(random);
+
+        // a short boundary starting with the escape byte, very likely to occur in compressed data without escaping
+        byte[] boundary = {0x1B, 0x00};
+
+        byte[] compressed = write(subStreams, boundary);
+
+        // the compressed data never contains the boundary
+        BoundaryInputStream bis = new BoundaryInputStream(new ByteArrayInputStream(compressed), boundary);
+        int count = 0;
+        for (InputStream is : bis) {
+            IOUtils.toByteArray(is);
+            count++;
+        }
+        assertThat(count, is(subStreams.size()));
+
+        checkResults(subStreams, read(compressed, boundary));
+    }
+
+    @Test
+    public void skipSubStreamTest() throws IOException {
+        List<byte[]> subStreams = new ArrayList<byte[]>();
+        subStreams.add("abc".getBytes());
+        subStreams.add("def".getBytes());
+        subStreams.add("ghi".getBytes());
+
+        CompressedBoundaryInputStream cbis = new CompressedBoundaryInputStream(new ByteArrayInputStream(write(subStreams, new byte[]{'#', '#'})),
+                                                                               new byte[]{'#', '#'});
+        try {
+            cbis.next();
+            assertThat(cbis.read(), is((int) 'a'));
+            cbis.next();
+            cbis.next();
+            assertThat(new String(cbis.readSubStream()), is("ghi"));
+            assertThat(cbis.hasFinished(), is(true));
+
+        } finally {
+            cbis.close();
+        }
+    }
+
+    @Test
+    public void readBatchTest() throws IOException {
+        List<byte[]> subStreams = new ArrayList<byte[]>();
+        for (int i = 0; i < 100; i++) {
+            subStreams.add(("sub-stream " + i).getBytes());
+        }
+
+        List<byte[]> results = new ArrayList<byte[]>();
+
+        CompressedBoundaryInputStream cbis = new CompressedBoundaryInputStream(new ByteArrayInputStream(write(subStreams, new byte[]{'#', '#'})),
+                                                                               new byte[]{'#', '#'});
+        try {
+            SubStreamArena batch;
+            while ((batch = cbis.readBatch(30, 1024)).count() > 0) {
+                for (int i = 0; i < batch.count(); i++) {
+                    results.add(Arrays.copyOfRange(batch.array(), batch.offset(i), batch.offset(i) + batch.length(i)));
+                }
+            }
+        } finally {
+            cbis.close();
+        }
+
+        checkResults(subStreams, results);
+    }
+
+    @Test
+    public void peekTest() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        List<byte[]> subStreams = new ArrayList<byte[]>();
+        subStreams.add("abc".getBytes());
+        subStreams.add(new byte[0]);
+        subStreams.add(sb.toString().getBytes());
+
+        CompressedBoundaryInputStream cbis = new CompressedBoundaryInputStream(new ByteArrayInputStream(write(subStreams, new byte[]{'#', '#'})),
+                                                                               new byte[]{'#', '#'});
+        try {
+            byte[] header = new byte[10];
+
+            cbis.next();
+            assertThat(cbis.peek(header, 0, header.length), is(3));
+            assertThat(new String(header, 0, 3), is("abc"));
+            assertThat(cbis.read(), is((int) 'a'));
+            assertThat(cbis.peek(header, 0, 1), is(1));
+            assertThat(header[0], is((byte) 'b'));
+            assertThat(new String(cbis.readSubStream()), is("bc"));
+            assertThat(cbis.peek(header, 0, 1), is(-1));
+
+            cbis.next();
+            assertThat(cbis.peek(header, 0, header.length), is(-1));
+
+            cbis.next();
+            byte[] longHeader = new byte[sb.length() / 2];
+            assertThat(cbis.peek(longHeader, 0, longHeader.length), is(longHeader.length));
+            assertThat(new String(longHeader), is(sb.substring(0, longHeader.length)));
+            assertThat(new String(cbis.readSubStream()), is(sb.toString()));
+
+        } finally {
+            cbis.close();
+        }
+    }
+
+    @Test
+    public void filterTest() throws IOException {
+        List<byte[]> subStreams = new ArrayList<byte[]>();
+        for (int i = 0; i < 100; i++) {
+            subStreams.add(((i % 3 == 0 ? "accepted " : "rejected ") + i).getBytes());
+        }
+
+        List<byte[]> expected = new ArrayList<byte[]>();
+        for (byte[] subStream : subStreams) {
+            if (subStream[0] == 'a') {
+                expected.add(subStream);
+            }
+        }
+        List<byte[]> results = new ArrayList<byte[]>();
+
+        CompressedBoundaryInputStream cbis = new CompressedBoundaryInputStream(new ByteArrayInputStream(write(subStreams, new byte[]{'#', '#'})),
+                                                                               new byte[]{'#', '#'});
+        try {
+            for (InputStream is : cbis.filter(8, new SubStreamFilter() {
+                @Override
+                public boolean accept(byte[] header, int length) {
+                    return new String(header, 0, length).equals("accepted");
+                }
+            })) {
+                results.add(IOUtils.toByteArray(is));
+            }
+        } finally {
+            cbis.close();
+        }
+
+        checkResults(expected, results);
+    }
+
+    private void checkResults(List<byte[]> expected, List<byte[]> results) {
+        assertThat(results.size(), is(expected.size()));
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(results.get(i), is(expected.get(i)));
+        }
+    }
+
+    private byte[] write(List<byte[]> subStreams, byte[] boundary) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompressedBoundaryOutputStream cbos = new CompressedBoundaryOutputStream(bytes, boundary);
+        try {
+            for (int i = 0; i < subStreams.size(); i++) {
+                cbos.write(subStreams.get(i));
+                if (i < subStreams.size() - 1) {
+                    cbos.boundary();
+                }
+            }
+        } finally {
+            cbos.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<byte[]> read(byte[] compressed, byte[] boundary) throws IOException {
+        List<byte[]> results = new ArrayList<byte[]>();
+
+        CompressedBoundaryInputStream cbis = new CompressedBoundaryInputStream(new ByteArrayInputStream(compressed), boundary);
+        try {
+            for (InputStream is : cbis) {
+                results.add(IOUtils.toByteArray(is));
+            }
+        } finally {
+            cbis.close();
+        }
+        return results;
+    }
+}
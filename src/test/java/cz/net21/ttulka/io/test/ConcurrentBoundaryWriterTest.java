@@ -0,0 +1,235 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import cz.net21.ttulka.io.BoundaryInputStream;
+import cz.net21.ttulka.io.BoundaryStreamConsts;
+import cz.net21.ttulka.io.ConcurrentBoundaryWriter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author ttulka
+ */
+public class ConcurrentBoundaryWriterTest {
+
+    @Test
+    public void closeOutputStreamTest() throws IOException {
+        OutputStream os = mock(OutputStream.class);
+        ConcurrentBoundaryWriter writer = new ConcurrentBoundaryWriter(os);
+
+        writer.close();
+
+        // Should close the base stream
+        verify(os).close();
+    }
+
+    @Test
+    public void concurrentProducersTest() throws Exception {
+        final int producers = 8;
+        final int subStreams = 200;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ConcurrentBoundaryWriter writer = new ConcurrentBoundaryWriter(bytes);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < subStreams; i++) {
+                            writer.append(subStream(producer, i).getBytes());
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close();
+
+        assertThat(failure.get() == null, is(true));
+
+        List<String> expected = new ArrayList<String>();
+        for (int p = 0; p < producers; p++) {
+            for (int i = 0; i < subStreams; i++) {
+                expected.add(subStream(p, i));
+            }
+        }
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = new BoundaryInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            for (InputStream is : bis) {
+                results.add(IOUtils.toString(is, Charset.defaultCharset()));
+            }
+        } finally {
+            bis.close();
+        }
+
+        Collections.sort(expected);
+        Collections.sort(results);
+
+        assertThat(results, is(expected));
+    }
+
+    @Test
+    public void smallBatchesTest() throws Exception {
+        final int producers = 8;
+        final int subStreams = 300;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // every batch is full after the first sub-stream, so the queued sub-streams must be written by other batches
+        final ConcurrentBoundaryWriter writer = new ConcurrentBoundaryWriter(bytes, BoundaryStreamConsts.BOUNDARY, false, 1);
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < subStreams; i++) {
+                            String subStream = subStream(producer, i);
+                            writer.append(subStream.getBytes());
+                            written.add(subStream);
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close();
+
+        assertThat(failure.get() == null, is(true));
+
+        List<String> results = read(bytes.toByteArray());
+
+        // every sub-stream whose append returned is present
+        List<String> expected = new ArrayList<String>(written);
+        Collections.sort(expected);
+        Collections.sort(results);
+
+        assertThat(results, is(expected));
+        assertThat(results.size(), is(producers * subStreams));
+    }
+
+    @Test
+    public void brokenWriterTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConcurrentBoundaryWriter writer = new ConcurrentBoundaryWriter(new FailingOutputStream(bytes, 2), BoundaryStreamConsts.BOUNDARY, false, 1);
+
+        writer.append("abc".getBytes());
+        try {
+            writer.append("defghijkl".getBytes());
+            throw new AssertionError("Writing failure expected.");
+
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Write failed."));
+        }
+        // no more data is written after a failure
+        try {
+            writer.append("xyz".getBytes());
+            throw new AssertionError("Writing failure expected.");
+
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Write failed."));
+        }
+        try {
+            writer.close();
+            throw new AssertionError("Writing failure expected.");
+
+        } catch (IOException e) {
+            assertThat(e.getCause().getMessage(), is("Write failed."));
+        }
+
+        assertThat(bytes.toString(), is("abc" + new String(BoundaryStreamConsts.BOUNDARY) + "defg"));
+    }
+
+    @Test(expected = IOException.class)
+    public void appendAfterCloseTest() throws IOException {
+        ConcurrentBoundaryWriter writer = new ConcurrentBoundaryWriter(new ByteArrayOutputStream());
+        writer.close();
+
+        writer.append("abc".getBytes());
+    }
+
+    private List<String> read(byte[] data) throws IOException {
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = new BoundaryInputStream(new ByteArrayInputStream(data));
+        try {
+            for (InputStream is : bis) {
+                results.add(IOUtils.toString(is, Charset.defaultCharset()));
+            }
+        } finally {
+            bis.close();
+        }
+        return results;
+    }
+
+    private String subStream(int producer, int index) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < index % 50; i++) {
+            sb.append(producer).append('-').append(index).append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a few bytes of the failing write and throws.
+     */
+    static class FailingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private int writes;
+
+        FailingOutputStream(OutputStream out, int failingWrite) {
+            this.out = out;
+            this.writes = failingWrite;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (--writes == 0) {
+                out.write(b, off, Math.min(len, 4));
+                throw new IOException("Write failed.");
+            }
+            out.write(b, off, len);
+        }
+    }
+}
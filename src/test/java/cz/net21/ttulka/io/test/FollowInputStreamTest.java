@@ -0,0 +1,109 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cz.net21.ttulka.io.BoundaryInputStream;
+import cz.net21.ttulka.io.BoundaryOutputStream;
+import cz.net21.ttulka.io.FollowInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class FollowInputStreamTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test(timeout = 10000)
+    public void followGrowingFileTest() throws Exception {
+        final String strings[] = {
+                "abc", "defgh", "ijklmnopqrstuvwxyz"
+        };
+        final File file = tmpFolder.newFile();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        BoundaryInputStream bis = new BoundaryInputStream(new FollowInputStream(new FileInputStream(file), 5));
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BoundaryOutputStream bos = new BoundaryOutputStream(new FileOutputStream(file));
+                    try {
+                        for (String s : strings) {
+                            // write the sub-stream in two parts
+                            int half = s.length() / 2;
+                            bos.write(s.substring(0, half).getBytes());
+                            bos.flush();
+                            Thread.sleep(30);
+
+                            bos.write(s.substring(half).getBytes());
+                            bos.boundary();
+                            bos.flush();
+                            Thread.sleep(30);
+                        }
+                    } finally {
+                        bos.close();
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        writer.start();
+
+        try {
+            for (String s : strings) {
+                assertThat(bis.hasFinished(), is(false));
+                bis.next();
+                assertThat(new String(bis.readSubStream()), is(s));
+            }
+            writer.join();
+
+            // no more data, waiting for a next sub-stream until closed
+            closeLater(bis);
+            assertThat(bis.hasFinished(), is(true));
+
+        } finally {
+            bis.close();
+        }
+
+        assertThat(failure.get() == null, is(true));
+    }
+
+    @Test(expected = IOException.class, timeout = 10000)
+    public void closedWhileWaitingTest() throws Exception {
+        FollowInputStream fis = new FollowInputStream(new FileInputStream(tmpFolder.newFile()), 5);
+
+        closeLater(fis);
+
+        fis.read();
+    }
+
+    private void closeLater(final Closeable closeable) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    closeable.close();
+
+                } catch (Exception e) {
+                    // ignore
+                }
+            }
+        }).start();
+    }
+}
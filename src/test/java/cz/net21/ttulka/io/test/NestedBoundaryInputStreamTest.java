@@ -0,0 +1,388 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cz.net21.ttulka.io.BoundaryCheckpoint;
+import cz.net21.ttulka.io.BoundaryInputStream;
+import cz.net21.ttulka.io.BoundaryOutputStream;
+import cz.net21.ttulka.io.NestedBoundaryInputStream;
+import cz.net21.ttulka.io.SubStreamArena;
+import cz.net21.ttulka.io.SubStreamFilter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class NestedBoundaryInputStreamTest {
+
+    private static final byte[] GROUP_BOUNDARY = "--GROUP--".getBytes();
+    private static final byte[] RECORD_BOUNDARY = "|".getBytes();
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void nestedStreamsTest() throws IOException {
+        String groups[][] = {
+                {"a", "bc", "def"}, {generateLongString()}, {"", "x", ""}, {"yz", generateLongString() + generateLongString()}
+        };
+        byte[] bytes = writeGroups(groups, true);
+
+        assertThat(readNested(bytes), is(readStacked(bytes)));
+        assertThat(readNested(bytes), is(toList(groups)));
+    }
+
+    @Test
+    public void noBoundaryAtEndTest() throws IOException {
+        String groups[][] = {
+                {"a", "bc"}, {"def", "gh"}
+        };
+        byte[] bytes = writeGroups(groups, false);
+
+        assertThat(readNested(bytes), is(readStacked(bytes)));
+    }
+
+    @Test
+    public void skipGroupTest() throws IOException {
+        String groups[][] = {
+                {"a", "bc", "def"}, {"ghi", "jk"}, {"l"}
+        };
+        byte[] bytes = writeGroups(groups, true);
+
+        NestedBoundaryInputStream nbis = new NestedBoundaryInputStream(new ByteArrayInputStream(bytes), new byte[][]{GROUP_BOUNDARY, RECORD_BOUNDARY});
+        try {
+            nbis.nextGroup();
+            nbis.nextRecord();
+            assertThat((char) nbis.read(), is('a'));
+
+            nbis.nextGroup();   // skips the rest of the first group
+            nbis.nextRecord();
+            assertThat(IOUtils.toString(nbis, Charset.defaultCharset()), is("ghi"));
+
+            nbis.nextGroup();
+            nbis.nextRecord();
+            assertThat(IOUtils.toString(nbis, Charset.defaultCharset()), is("l"));
+
+            assertThat(nbis.hasNextRecord(), is(false));
+            assertThat(nbis.hasNextGroup(), is(false));
+
+        } finally {
+            nbis.close();
+        }
+    }
+
+    @Test
+    public void markResetTest() throws IOException {
+        String groups[][] = {
+                {"a", "bc"}, {"def"}
+        };
+        byte[] bytes = writeGroups(groups, false);
+
+        NestedBoundaryInputStream nbis = new NestedBoundaryInputStream(new ByteArrayInputStream(bytes), new byte[][]{GROUP_BOUNDARY, RECORD_BOUNDARY});
+        try {
+            assertThat(nbis.markSupported(), is(true));
+
+            nbis.nextGroup();
+            nbis.nextRecord();
+            nbis.nextRecord();
+            nbis.mark(100);
+            // reads over the group boundary
+            assertThat(IOUtils.toString(nbis, Charset.defaultCharset()), is("bc"));
+            assertThat(nbis.hasNextRecord(), is(false));
+
+            nbis.reset();
+            assertThat(nbis.hasNextRecord(), is(true));
+            assertThat(IOUtils.toString(nbis, Charset.defaultCharset()), is("bc"));
+            assertThat(nbis.hasNextRecord(), is(false));
+
+            nbis.nextGroup();
+            nbis.nextRecord();
+            nbis.mark(100);
+            // reads till EOF
+            assertThat(IOUtils.toString(nbis, Charset.defaultCharset()), is("def"));
+            assertThat(nbis.hasNextGroup(), is(false));
+
+            nbis.reset();
+            assertThat(nbis.hasNextGroup(), is(true));
+            assertThat(IOUtils.toString(nbis, Charset.defaultCharset()), is("def"));
+            assertThat(nbis.hasNextGroup(), is(false));
+
+        } finally {
+            nbis.close();
+        }
+    }
+
+    @Test
+    public void filterRecordsTest() throws IOException {
+        String groups[][] = {
+                {"a1", "b2", "a3"}, {"b4", "a5"}
+        };
+        byte[] bytes = writeGroups(groups, true);
+
+        SubStreamFilter filter = new SubStreamFilter() {
+            @Override
+            public boolean accept(byte[] header, int length) {
+                return length == 1 && header[0] == 'a';
+            }
+        };
+        List<String> results = new ArrayList<String>();
+
+        NestedBoundaryInputStream nbis = new NestedBoundaryInputStream(new ByteArrayInputStream(bytes), new byte[][]{GROUP_BOUNDARY, RECORD_BOUNDARY});
+        try {
+            nbis.nextGroup();
+            nbis.nextRecord();
+
+            byte[] header = new byte[10];
+            assertThat(nbis.peek(header, 0, header.length), is(2));
+            assertThat(new String(header, 0, 2), is("a1"));
+            assertThat(IOUtils.toString(nbis, Charset.defaultCharset()), is("a1"));
+
+            // the records are filtered within the current group
+            for (InputStream is : nbis.filter(1, filter)) {
+                results.add(IOUtils.toString(is, Charset.defaultCharset()));
+            }
+            nbis.nextGroup();
+            for (InputStream is : nbis.filter(1, filter)) {
+                results.add(IOUtils.toString(is, Charset.defaultCharset()));
+            }
+            assertThat(nbis.hasNextGroup(), is(false));
+
+        } finally {
+            nbis.close();
+        }
+
+        assertThat(results, is(Arrays.asList("a3", "a5")));
+    }
+
+    @Test
+    public void claimNextTest() throws Exception {
+        String groups[][] = new String[3][500];
+        List<String> expected = new ArrayList<String>();
+        for (int g = 0; g < groups.length; g++) {
+            for (int r = 0; r < groups[g].length; r++) {
+                groups[g][r] = r % 100 == 0 ? generateLongString() + g + "-" + r : g + "-" + r;
+                expected.add(groups[g][r]);
+            }
+        }
+        byte[] bytes = writeGroups(groups, true);
+
+        final String[] results = new String[expected.size()];
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        final NestedBoundaryInputStream nbis = new NestedBoundaryInputStream(new ByteArrayInputStream(bytes),
+                                                                             new byte[][]{GROUP_BOUNDARY, RECORD_BOUNDARY});
+        try {
+            while (nbis.hasNextGroup()) {
+                nbis.nextGroup();
+
+                Thread[] consumers = new Thread[4];
+                for (int c = 0; c < consumers.length; c++) {
+                    consumers[c] = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            SubStreamArena arena = new SubStreamArena(64, 1);
+                            try {
+                                long index;
+                                while ((index = nbis.claimNext(arena)) != -1) {
+                                    assertThat(results[(int) index] == null, is(true));
+                                    results[(int) index] = new String(arena.array(), arena.offset(0), arena.length(0));
+                                }
+                            } catch (Throwable t) {
+                                failure.set(t);
+                            }
+                        }
+                    });
+                    consumers[c].start();
+                }
+                for (Thread consumer : consumers) {
+                    consumer.join();
+                }
+            }
+        } finally {
+            nbis.close();
+        }
+
+        assertThat(failure.get() == null, is(true));
+        assertThat(Arrays.asList(results), is(expected));
+    }
+
+    @Test
+    public void checkpointTest() throws IOException {
+        String groups[][] = {
+                {"abc", "de"}, {"fgh", "ij"}, {"k"}
+        };
+        File file = tmpFolder.newFile();
+        FileUtils.writeByteArrayToFile(file, writeGroups(groups, true));
+
+        BoundaryCheckpoint checkpoint1;
+        BoundaryCheckpoint checkpoint2;
+
+        NestedBoundaryInputStream nbis = new NestedBoundaryInputStream(new FileInputStream(file), new byte[][]{GROUP_BOUNDARY, RECORD_BOUNDARY});
+        try {
+            nbis.nextGroup();
+            nbis.nextRecord();
+            assertThat((char) nbis.read(), is('a'));
+            checkpoint1 = nbis.getCheckpoint();
+
+            nbis.nextRecord();
+            assertThat(IOUtils.toString(nbis, Charset.defaultCharset()), is("de"));
+            // the group has ended
+            checkpoint2 = nbis.getCheckpoint();
+
+        } finally {
+            nbis.close();
+        }
+
+        assertThat(checkpoint1.getSubStreamIndex(), is(0L));
+        assertThat(checkpoint2.getSubStreamIndex(), is(1L));
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        nbis = NestedBoundaryInputStream.open(raf.getChannel(), new byte[][]{GROUP_BOUNDARY, RECORD_BOUNDARY}, checkpoint1);
+        try {
+            assertThat(IOUtils.toString(nbis, Charset.defaultCharset()), is("bc"));
+            nbis.nextRecord();
+            assertThat(IOUtils.toString(nbis, Charset.defaultCharset()), is("de"));
+            assertThat(nbis.hasNextRecord(), is(false));
+            assertThat(nbis.getCheckpoint(), is(checkpoint2));
+
+        } finally {
+            nbis.close();
+        }
+
+        raf = new RandomAccessFile(file, "r");
+        nbis = NestedBoundaryInputStream.open(raf.getChannel(), new byte[][]{GROUP_BOUNDARY, RECORD_BOUNDARY}, checkpoint2);
+        try {
+            assertThat(nbis.hasNextRecord(), is(false));
+
+            List<List<String>> results = new ArrayList<List<String>>();
+            while (nbis.hasNextGroup()) {
+                nbis.nextGroup();
+                List<String> records = new ArrayList<String>();
+                while (nbis.hasNextRecord()) {
+                    nbis.nextRecord();
+                    records.add(IOUtils.toString(nbis, Charset.defaultCharset()));
+                }
+                results.add(records);
+            }
+            assertThat(results, is(toList(new String[][]{groups[1], groups[2]})));
+            assertThat(nbis.getCheckpoint().getSubStreamIndex(), is(4L));
+
+        } finally {
+            nbis.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkpointOfPlainStreamTest() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(tmpFolder.newFile(), "r");
+        try {
+            NestedBoundaryInputStream.open(raf.getChannel(), new byte[][]{GROUP_BOUNDARY, RECORD_BOUNDARY}, new BoundaryCheckpoint(0, 0, false, false));
+
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void illegalArgumentTest() {
+        new NestedBoundaryInputStream(new ByteArrayInputStream(new byte[0]), new byte[][]{"xxx".getBytes(), "xx".getBytes()});
+    }
+
+    private List<List<String>> readNested(byte[] bytes) throws IOException {
+        List<List<String>> results = new ArrayList<List<String>>();
+
+        NestedBoundaryInputStream nbis = new NestedBoundaryInputStream(new ByteArrayInputStream(bytes), new byte[][]{GROUP_BOUNDARY, RECORD_BOUNDARY});
+        try {
+            while (nbis.hasNextGroup()) {
+                nbis.nextGroup();
+
+                List<String> records = new ArrayList<String>();
+                for (InputStream is : nbis) {
+                    records.add(IOUtils.toString(is, Charset.defaultCharset()));
+                }
+                results.add(records);
+            }
+        } finally {
+            nbis.close();
+        }
+        return results;
+    }
+
+    private List<List<String>> readStacked(byte[] bytes) throws IOException {
+        List<List<String>> results = new ArrayList<List<String>>();
+
+        BoundaryInputStream groups = new BoundaryInputStream(new ByteArrayInputStream(bytes), GROUP_BOUNDARY);
+        try {
+            for (InputStream group : groups) {
+                List<String> records = new ArrayList<String>();
+                for (InputStream is : new BoundaryInputStream(group, RECORD_BOUNDARY)) {
+                    records.add(IOUtils.toString(is, Charset.defaultCharset()));
+                }
+                results.add(records);
+            }
+        } finally {
+            groups.close();
+        }
+        return results;
+    }
+
+    private List<List<String>> toList(String[][] groups) {
+        List<List<String>> list = new ArrayList<List<String>>();
+        for (String[] group : groups) {
+            List<String> records = new ArrayList<String>();
+            for (String record : group) {
+                records.add(record);
+            }
+            list.add(records);
+        }
+        return list;
+    }
+
+    private byte[] writeGroups(String[][] groups, boolean boundaryAtEnd) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BoundaryOutputStream gbos = new BoundaryOutputStream(bytes, GROUP_BOUNDARY);
+        BoundaryOutputStream rbos = new BoundaryOutputStream(gbos, RECORD_BOUNDARY);
+
+        for (int g = 0; g < groups.length; g++) {
+            for (int r = 0; r < groups[g].length; r++) {
+                rbos.write(groups[g][r].getBytes());
+                if (boundaryAtEnd || r < groups[g].length - 1) {
+                    rbos.boundary();
+                }
+            }
+            if (boundaryAtEnd || g < groups.length - 1) {
+                gbos.boundary();
+            }
+        }
+        rbos.close();
+        return bytes.toByteArray();
+    }
+
+    // longer than the boundaries
+    private String generateLongString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < GROUP_BOUNDARY.length * 3; i++) {
+            sb.append((char) ('0' + i));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import cz.net21.ttulka.io.BoundaryStreamConsts;
+import cz.net21.ttulka.io.CompressedBoundaryInputStream;
+import cz.net21.ttulka.io.ParallelCompressedBoundaryWriter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author ttulka
+ */
+public class ParallelCompressedBoundaryWriterTest {
+
+    @Test
+    public void closeOutputStreamTest() throws IOException {
+        OutputStream os = mock(OutputStream.class);
+        ParallelCompressedBoundaryWriter writer = new ParallelCompressedBoundaryWriter(os);
+
+        writer.close();
+
+        // Should close the base stream
+        verify(os).close();
+    }
+
+    @Test
+    public void orderTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ParallelCompressedBoundaryWriter writer = new ParallelCompressedBoundaryWriter(bytes, BoundaryStreamConsts.BOUNDARY, 4, 3, 6);
+
+        List<String> expected = new ArrayList<String>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                String subStream = subStream(i);
+                expected.add(subStream);
+                writer.append(subStream.getBytes());
+            }
+        } finally {
+            writer.close();
+        }
+
+        List<String> results = new ArrayList<String>();
+
+        CompressedBoundaryInputStream cbis = new CompressedBoundaryInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            for (InputStream is : cbis) {
+                results.add(IOUtils.toString(is, Charset.defaultCharset()));
+            }
+        } finally {
+            cbis.close();
+        }
+
+        assertThat(results, is(expected));
+    }
+
+    @Test(expected = IOException.class)
+    public void appendAfterCloseTest() throws IOException {
+        ParallelCompressedBoundaryWriter writer = new ParallelCompressedBoundaryWriter(new ByteArrayOutputStream());
+        writer.close();
+
+        writer.append("abc".getBytes());
+    }
+
+    @Test
+    public void brokenWriterTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // the data of the second sub-stream is written partially
+        OutputStream os = new ConcurrentBoundaryWriterTest.FailingOutputStream(bytes, 3);
+        ParallelCompressedBoundaryWriter writer = new ParallelCompressedBoundaryWriter(os, BoundaryStreamConsts.BOUNDARY, 1, 1, 6);
+
+        writer.append(subStream(1).getBytes());
+        writer.append(subStream(2).getBytes());
+        try {
+            writer.append(subStream(3).getBytes());
+            throw new AssertionError("Write failure expected.");
+
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Write failed."));
+        }
+        int written = bytes.size();
+
+        try {
+            writer.append(subStream(4).getBytes());
+            throw new AssertionError("Broken writer expected.");
+
+        } catch (IOException e) {
+            assertThat(e.getCause().getMessage(), is("Write failed."));
+        }
+        try {
+            writer.close();
+            throw new AssertionError("Broken writer expected.");
+
+        } catch (IOException e) {
+            assertThat(e.getCause().getMessage(), is("Write failed."));
+        }
+
+        // nothing is written after the failure
+        assertThat(bytes.size(), is(written));
+
+        CompressedBoundaryInputStream cbis = new CompressedBoundaryInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            cbis.next();
+            assertThat(IOUtils.toString(cbis, Charset.defaultCharset()), is(subStream(1)));
+
+        } finally {
+            cbis.close();
+        }
+    }
+
+    private String subStream(int index) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < (index * 37) % 1000; i++) {
+            sb.append(index).append(';');
+        }
+        return sb.toString();
+    }
+}
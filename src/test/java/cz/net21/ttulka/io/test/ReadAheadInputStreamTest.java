@@ -0,0 +1,97 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import cz.net21.ttulka.io.BoundaryInputStream;
+import cz.net21.ttulka.io.BoundaryOutputStream;
+import cz.net21.ttulka.io.ReadAheadInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class ReadAheadInputStreamTest {
+
+    @Test
+    public void readAheadBoundaryStreamTest() throws IOException {
+        String strings[] = {
+                "a", "bc", "def", generateLongString(1000), generateLongString(5000)
+        };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BoundaryOutputStream bos = new BoundaryOutputStream(bytes);
+        for (String s : strings) {
+            bos.write(s.getBytes());
+            bos.boundary();
+        }
+        bos.close();
+
+        List<String> results = new ArrayList<String>();
+
+        BoundaryInputStream bis = null;
+        try {
+            bis = new BoundaryInputStream(new ReadAheadInputStream(new ByteArrayInputStream(bytes.toByteArray()), 7, 3));
+
+            for (InputStream is : bis) {
+                results.add(IOUtils.toString(is, Charset.defaultCharset()));
+            }
+        } finally {
+            bis.close();
+        }
+
+        assertThat(results.size(), is(strings.length));
+        for (int i = 0; i < strings.length; i++) {
+            assertThat(results.get(i), is(strings[i]));
+        }
+    }
+
+    @Test
+    public void exceptionPropagationTest() throws IOException {
+        final IOException exception = new IOException("test");
+
+        InputStream failing = new InputStream() {
+            private int count = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ < 10) {
+                    return 'x';
+                }
+                throw exception;
+            }
+        };
+
+        ReadAheadInputStream rais = new ReadAheadInputStream(failing, 4, 2);
+        try {
+            for (int i = 0; i < 10; i++) {
+                assertThat(rais.read(), is((int) 'x'));
+            }
+            rais.read();
+            throw new AssertionError("Exception expected.");
+
+        } catch (IOException e) {
+            assertThat(e == exception, is(true));
+
+        } finally {
+            rais.close();
+        }
+    }
+
+    private String generateLongString(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cz.net21.ttulka.io.BoundaryInputStream;
+import cz.net21.ttulka.io.BoundaryStreamConsts;
+import cz.net21.ttulka.io.SegmentedBoundaryInputStream;
+import cz.net21.ttulka.io.SegmentedBoundaryOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class SegmentedBoundaryStreamsTest {
+
+    private static final String[] STRINGS = {
+            "abc", "defgh", "ijklmnopqrstuvwxyz", "0123456789", "", "xyz", "last"
+    };
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void rollByCountTest() throws IOException {
+        File dir = tmpFolder.newFolder();
+        List<File> segments = write(dir, Long.MAX_VALUE, 2);
+
+        assertThat(segments.size(), is(4));
+        assertThat(SegmentedBoundaryInputStream.listSegments(dir), is(segments));
+
+        read(new SegmentedBoundaryInputStream(dir));
+    }
+
+    @Test
+    public void rollBySizeTest() throws IOException {
+        File dir = tmpFolder.newFolder();
+        List<File> segments = write(dir, 60, Long.MAX_VALUE);
+
+        // sub-streams are never split, a segment is rolled after the boundary exceeding the size
+        assertThat(segments.size(), is(3));
+
+        read(new SegmentedBoundaryInputStream(dir));
+    }
+
+    @Test
+    public void readSegmentsIndependentlyTest() throws IOException {
+        File dir = tmpFolder.newFolder();
+        List<File> segments = write(dir, Long.MAX_VALUE, 3);
+
+        assertThat(segments.size(), is(3));
+
+        int index = 0;
+        for (File segment : segments) {
+            BoundaryInputStream bis = new BoundaryInputStream(new FileInputStream(segment));
+            try {
+                for (InputStream subStream : bis) {
+                    assertThat(new String(IOUtils.toByteArray(subStream)), is(STRINGS[index++]));
+                }
+            } finally {
+                bis.close();
+            }
+        }
+        assertThat(index, is(STRINGS.length));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void missingSegmentTest() throws IOException {
+        File dir = tmpFolder.newFolder();
+        List<File> segments = write(dir, Long.MAX_VALUE, 2);
+        assertThat(segments.get(1).delete(), is(true));
+
+        new SegmentedBoundaryInputStream(segments, BoundaryStreamConsts.BOUNDARY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notPositiveMaxSizeTest() throws IOException {
+        new SegmentedBoundaryOutputStream(tmpFolder.newFolder(), 0, 1);
+    }
+
+    private List<File> write(File dir, long maxSegmentSize, long maxSubStreams) throws IOException {
+        SegmentedBoundaryOutputStream sbos = new SegmentedBoundaryOutputStream(dir, maxSegmentSize, maxSubStreams);
+        try {
+            for (int i = 0; i < STRINGS.length; i++) {
+                sbos.write(STRINGS[i].getBytes());
+                if (i < STRINGS.length - 1) {
+                    sbos.boundary();
+                }
+            }
+        } finally {
+            sbos.close();
+        }
+        return sbos.getSegments();
+    }
+
+    private void read(BoundaryInputStream bis) throws IOException {
+        try {
+            int index = 0;
+            for (InputStream subStream : bis) {
+                assertThat(new String(IOUtils.toByteArray(subStream)), is(STRINGS[index++]));
+            }
+            assertThat(index, is(STRINGS.length));
+
+        } finally {
+            bis.close();
+        }
+    }
+}
@@ -7,6 +7,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -22,10 +24,13 @@ import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import cz.net21.ttulka.io.BoundaryCheckpoint;
 import cz.net21.ttulka.io.BoundaryInputStream;
 import cz.net21.ttulka.io.BoundaryStreamConsts;
+import cz.net21.ttulka.io.StopBoundaryChannelWriter;
 import cz.net21.ttulka.io.StopBoundaryInputStream;
 import cz.net21.ttulka.io.StopBoundaryOutputStream;
+import cz.net21.ttulka.io.SubStreamFilter;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -641,6 +646,103 @@ public class StopBoundaryStreamsTest {
         checkImagesStream();
     }
 
+    @Test
+    public void readSubStreamTest() throws IOException {
+        String strings[] = {
+                "a", "bc", "def", generateLongString(), generateLongString() + generateLongString()
+        };
+        writeStringStreams(tmpFile, strings);
+
+        List<String> results = new ArrayList<String>();
+
+        StopBoundaryInputStream sbis = null;
+        try {
+            sbis = new StopBoundaryInputStream(new FileInputStream(tmpFile));
+
+            while (!sbis.hasFinished()) {
+                sbis.next();
+                results.add(new String(sbis.readSubStream()));
+            }
+        } finally {
+            sbis.close();
+        }
+
+        compareResults(strings, results.toArray(new String[0]));
+    }
+
+    @Test
+    public void channelWriterTest() throws IOException {
+        String strings[] = {
+                "a", "bc", "def", generateLongString()
+        };
+
+        StopBoundaryChannelWriter writer = null;
+        try {
+            writer = new StopBoundaryChannelWriter(new FileOutputStream(tmpFile).getChannel());
+
+            ByteBuffer[] subStreams = new ByteBuffer[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                subStreams[i] = ByteBuffer.wrap(strings[i].getBytes());
+            }
+            writer.writeSubStreams(subStreams);
+            writer.stopBoundary();
+            writer.write(ByteBuffer.wrap(JUNK.getBytes()));
+
+        } finally {
+            writer.close();
+        }
+
+        List<String> results = new ArrayList<String>();
+
+        StopBoundaryInputStream sbis = null;
+        try {
+            sbis = new StopBoundaryInputStream(new FileInputStream(tmpFile));
+
+            for (InputStream is : sbis) {
+                results.add(readStream(is));
+            }
+        } finally {
+            sbis.close();
+        }
+
+        compareResults(strings, results.toArray(new String[0]));
+    }
+
+    @Test
+    public void checkpointTest() throws IOException {
+        String strings[] = {
+                "a", "bc", "def"
+        };
+        writeStringStreams(tmpFile, strings);
+
+        BoundaryCheckpoint checkpoint;
+
+        StopBoundaryInputStream sbis = null;
+        try {
+            sbis = new StopBoundaryInputStream(new FileInputStream(tmpFile));
+
+            for (int i = 0; i < strings.length; i++) {
+                sbis.next();
+                assertThat(readStream(sbis), is(strings[i]));
+            }
+            checkpoint = sbis.getCheckpoint();
+
+        } finally {
+            sbis.close();
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(tmpFile, "r");
+        try {
+            sbis = StopBoundaryInputStream.open(raf.getChannel(), BoundaryStreamConsts.BOUNDARY, BoundaryStreamConsts.STOP_BOUNDARY, checkpoint);
+
+            // the stop boundary follows
+            assertThat(sbis.hasFinished(), is(true));
+
+        } finally {
+            sbis.close();
+        }
+    }
+
     private void checkImagesStream() throws IOException {
         File[] imageFiles = {tmpFolder.newFile(), tmpFolder.newFile(), tmpFolder.newFile()};
 
@@ -669,6 +771,34 @@ public class StopBoundaryStreamsTest {
         }
     }
 
+    @Test
+    public void filterTest() throws IOException {
+        writeStringStreams(tmpFile, "Aone", "Btwo", "Bthree");
+
+        List<String> results = new ArrayList<String>();
+
+        StopBoundaryInputStream sbis = null;
+        try {
+            sbis = new StopBoundaryInputStream(new FileInputStream(tmpFile));
+
+            for (InputStream is : sbis.filter(1, new SubStreamFilter() {
+                @Override
+                public boolean accept(byte[] header, int length) {
+                    return length == 1 && header[0] == 'A';
+                }
+            })) {
+                results.add(readStream(is));
+            }
+            assertThat(sbis.hasFinished(), is(true));
+
+        } finally {
+            sbis.close();
+        }
+
+        assertThat(results.size(), is(1));
+        assertThat(results.get(0), is("Aone"));
+    }
+
     private String readStream(InputStream is) throws IOException {
         return IOUtils.toString(is, Charset.defaultCharset());
     }
@@ -0,0 +1,144 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cz.net21.ttulka.io.BoundaryInputStream;
+import cz.net21.ttulka.io.BoundaryOutputStream;
+import cz.net21.ttulka.io.SubStreamBuffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class SubStreamBufferTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void heapTest() throws IOException {
+        byte[] small = data(1000);
+
+        BoundaryInputStream bis = new BoundaryInputStream(new ByteArrayInputStream(write(small, "xyz".getBytes())));
+        try {
+            bis.next();
+            SubStreamBuffer buffer = bis.bufferSubStream(4096, temp.getRoot());
+            try {
+                assertThat(buffer.isSpilled(), is(false));
+                assertThat(buffer.size(), is(1000L));
+                assertThat(temp.getRoot().list().length, is(0));
+
+                checkBuffer(buffer, small);
+
+            } finally {
+                buffer.close();
+            }
+            bis.next();
+            assertThat(new String(bis.readSubStream()), is("xyz"));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void spillTest() throws IOException {
+        byte[] large = data(100000);
+
+        BoundaryInputStream bis = new BoundaryInputStream(new ByteArrayInputStream(write(large, "xyz".getBytes())));
+        try {
+            bis.next();
+            SubStreamBuffer buffer = bis.bufferSubStream(4096, temp.getRoot());
+            try {
+                assertThat(buffer.isSpilled(), is(true));
+                assertThat(buffer.size(), is(100000L));
+                assertThat(temp.getRoot().list().length, is(1));
+
+                checkBuffer(buffer, large);
+
+            } finally {
+                buffer.close();
+            }
+            // the temporary file is deleted
+            assertThat(temp.getRoot().list().length, is(0));
+
+            bis.next();
+            assertThat(new String(bis.readSubStream()), is("xyz"));
+
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void emptyTest() throws IOException {
+        BoundaryInputStream bis = new BoundaryInputStream(new ByteArrayInputStream(write(new byte[0])));
+        try {
+            bis.next();
+            SubStreamBuffer buffer = bis.bufferSubStream(0);
+            try {
+                assertThat(buffer.isSpilled(), is(false));
+                checkBuffer(buffer, new byte[0]);
+
+            } finally {
+                buffer.close();
+            }
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedTest() throws IOException {
+        BoundaryInputStream bis = new BoundaryInputStream(new ByteArrayInputStream(write("abc".getBytes())));
+        bis.next();
+        SubStreamBuffer buffer = bis.bufferSubStream(10);
+        buffer.close();
+        bis.close();
+
+        buffer.getInputStream();
+    }
+
+    private void checkBuffer(SubStreamBuffer buffer, byte[] expected) throws IOException {
+        // re-readable
+        for (int i = 0; i < 2; i++) {
+            assertThat(IOUtils.toByteArray(buffer.getInputStream()), is(expected));
+
+            ByteBuffer byteBuffer = buffer.asByteBuffer();
+            byte[] bytes = new byte[byteBuffer.remaining()];
+            byteBuffer.get(bytes);
+            assertThat(bytes, is(expected));
+        }
+    }
+
+    private byte[] write(byte[]... subStreams) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BoundaryOutputStream bos = new BoundaryOutputStream(bytes);
+        try {
+            for (byte[] subStream : subStreams) {
+                bos.write(subStream);
+                bos.boundary();
+            }
+        } finally {
+            bos.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
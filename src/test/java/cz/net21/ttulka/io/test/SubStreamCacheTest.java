@@ -0,0 +1,95 @@
+package cz.net21.ttulka.io.test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import cz.net21.ttulka.io.SubStreamCache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author ttulka
+ */
+public class SubStreamCacheTest {
+
+    @Test
+    public void loadOnMissTest() throws IOException {
+        final AtomicInteger loads = new AtomicInteger();
+        SubStreamCache.Loader loader = new SubStreamCache.Loader() {
+            @Override
+            public byte[] load(long key) {
+                loads.incrementAndGet();
+                return ("sub-stream " + key).getBytes();
+            }
+        };
+        SubStreamCache cache = new SubStreamCache(1024);
+
+        assertThat(new String(cache.get(1, loader)), is("sub-stream 1"));
+        assertThat(new String(cache.get(1, loader)), is("sub-stream 1"));
+        assertThat(new String(cache.get(2, loader)), is("sub-stream 2"));
+
+        assertThat(loads.get(), is(2));
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(2L));
+        assertThat(cache.size(), is((long) "sub-stream 1".length() * 2));
+    }
+
+    @Test
+    public void loadMissingKeyTest() throws IOException {
+        final AtomicInteger loads = new AtomicInteger();
+        SubStreamCache.Loader loader = new SubStreamCache.Loader() {
+            @Override
+            public byte[] load(long key) {
+                loads.incrementAndGet();
+                return null;
+            }
+        };
+        SubStreamCache cache = new SubStreamCache(1024);
+
+        assertThat(cache.get(1, loader), is(nullValue()));
+        // a missing key is not cached
+        assertThat(cache.get(1, loader), is(nullValue()));
+
+        assertThat(loads.get(), is(2));
+        assertThat(cache.size(), is(0L));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedTest() {
+        SubStreamCache cache = new SubStreamCache(30, 1);
+
+        cache.put(1, new byte[10]);
+        cache.put(2, new byte[10]);
+        cache.put(3, new byte[10]);
+
+        cache.get(1); // 2 is the least recently used now
+        cache.put(4, new byte[10]);
+
+        assertThat(cache.get(2), is(nullValue()));
+        assertThat(cache.get(1).length, is(10));
+        assertThat(cache.get(3).length, is(10));
+        assertThat(cache.get(4).length, is(10));
+        assertThat(cache.size(), is(30L));
+        assertThat(cache.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    public void tooBigNotCachedTest() {
+        SubStreamCache cache = new SubStreamCache(30, 1);
+
+        cache.put(1, new byte[10]);
+        cache.put(1, new byte[31]);
+
+        assertThat(cache.get(1), is(nullValue()));
+        assertThat(cache.size(), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notPositiveMaxSizeTest() {
+        new SubStreamCache(0);
+    }
+}